@@ -17,10 +17,9 @@ import android.widget.TextView;
 import com.grademanager.app.converter.JsonConverter;
 import com.grademanager.app.converter.ObjectAdapter;
 import com.grademanager.app.grade.CalculatorWrapper;
+import com.grademanager.parser.grade.FixedPoint;
 import com.grademanager.parser.json.JSONObject;
 
-import java.math.BigDecimal;
-
 import static com.grademanager.app.util.ConstantKeys.KEY_CALCULATOR;
 import static com.grademanager.app.util.ConstantKeys.KEY_NAME;
 
@@ -34,6 +33,16 @@ public class SubjectConverter extends ObjectAdapter.ViewConverter<SubjectManager
 	 */
 	public static final SubjectConverter instance = new SubjectConverter();
 
+	/**
+	 * The amount of decimals an average is shown with
+	 */
+	private static final int AVERAGE_DECIMALS = 1;
+
+	/**
+	 * The builder the average of a list row is written into, the views are only populated on the UI thread and the text view copies it
+	 */
+	private final StringBuilder averageBuilder = new StringBuilder();
+
 	private SubjectConverter () {}
 
 	@Override
@@ -45,7 +54,8 @@ public class SubjectConverter extends ObjectAdapter.ViewConverter<SubjectManager
 	public void populateInflatedView (final View view, final SubjectManager.Subject from) {
 		// Set the average grade
 		final TextView averageGrade = (TextView) view.findViewById(R.id.average_grade);
-		averageGrade.setText(formatAverage(from.calculator.calculateAverage()));
+		averageBuilder.setLength(0);
+		averageGrade.setText(formatAverage(from.calculateAverage(), averageBuilder));
 		// Set the subject name
 		final TextView subjectName = (TextView) view.findViewById(R.id.subject_name);
 		subjectName.setText(from.name);
@@ -71,7 +81,17 @@ public class SubjectConverter extends ObjectAdapter.ViewConverter<SubjectManager
 	 * @return A {@link String} representing this average
 	 */
 	public static String formatAverage (final double average) {
-		final BigDecimal bigAverage = new BigDecimal(String.valueOf(average));
-		return bigAverage.setScale(1, BigDecimal.ROUND_HALF_UP).toPlainString();
+		return FixedPoint.format(average, AVERAGE_DECIMALS);
+	}
+
+	/**
+	 * Appends a properly rounded form of the given value to the builder, without creating any objects
+	 *
+	 * @param average The average to round
+	 * @param builder The builder to append to
+	 * @return The builder
+	 */
+	public static StringBuilder formatAverage (final double average, final StringBuilder builder) {
+		return FixedPoint.append(builder, average, AVERAGE_DECIMALS);
 	}
 }
@@ -15,16 +15,19 @@ package com.grademanager.app;
 import android.content.Context;
 import com.grademanager.app.grade.CalculatorWrapper;
 import com.grademanager.app.grade.GradeWrapper;
+import com.grademanager.parser.grade.FlatFormula;
 import com.grademanager.parser.grade.Grade;
 import com.grademanager.parser.json.JSONArray;
 import com.grademanager.parser.json.JSONException;
 import com.grademanager.parser.json.JSONWriter;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -52,6 +55,11 @@ public class SubjectManager {
 		 */
 		private final Grade[] subGrades;
 
+		/**
+		 * The flattened {@link #calculator}
+		 */
+		private final FlatFormula formula;
+
 		/**
 		 * Creates a Subject with a name and calculator
 		 *
@@ -74,12 +82,41 @@ public class SubjectManager {
 				}
 			}
 			this.subGrades = subGrades.toArray(new Grade[subGrades.size()]);
+			this.formula = calculator.flatten();
 		}
 
 		public Grade[] getSubGrades () {
 			return subGrades;
 		}
 
+		/**
+		 * Returns the flattened {@link #calculator}, of which the leaves are the {@link #getSubGrades()}
+		 *
+		 * @return The flattened formula
+		 */
+		public FlatFormula getFormula () {
+			return formula;
+		}
+
+		/**
+		 * Calculates how much the average of this subject moves per point of every sub-grade, see {@link FlatFormula#calculateSensitivities()}
+		 *
+		 * @return The sensitivity of every sub-grade, with the same index as {@link #getSubGrades()}
+		 */
+		public double[] calculateSensitivities () {
+			return formula.calculateSensitivities();
+		}
+
+		/**
+		 * Returns the average of this subject, including the grades in the {@link GradeWrapper} objects. The calculator keeps this up to date, so this does not calculate
+		 * anything
+		 *
+		 * @return The average
+		 */
+		public double calculateAverage () {
+			return calculator.calculateAverage();
+		}
+
 		@Override
 		public Subject clone () {
 			return new Subject(name, calculator.clone());
@@ -107,9 +144,9 @@ public class SubjectManager {
 	protected final List<Subject> subjects;
 
 	/**
-	 * The latest array for comparing purposes
+	 * The content hash of the latest saved array, for comparing purposes
 	 */
-	private JSONArray latestSavedArray;
+	private byte[] latestSavedHash;
 
 	/**
 	 * Creates the manager which uses the Context to load the internal storage
@@ -136,9 +173,9 @@ public class SubjectManager {
 			final JSONArray subjectArray = new JSONArray(new InputStreamReader(context.openFileInput(FILE_NAME)));
 			for (int i = 0; i < subjectArray.getSize(); i++)
 				subjects.add(SubjectConverter.instance.convert(subjectArray.getJSONObject(i)));
-			latestSavedArray = subjectArray; // it succeeded
+			latestSavedHash = writeCanonical(subjectArray, new StringWriter()); // it succeeded
 			return subjects;
-		} catch (final FileNotFoundException | JSONException e) {
+		} catch (final IOException | JSONException e) {
 			e.printStackTrace();
 		}
 		// Create an empty list
@@ -157,22 +194,38 @@ public class SubjectManager {
 			for (final Subject subject : subjects)
 				subjectArray.add(SubjectConverter.instance.convert(subject));
 
-			// Minimize writes to the file
-			if (!subjectArray.equals(latestSavedArray)) {
-				try {
+			try {
+				// Minimize writes to the file, the canonical form always has the same hash for the same subjects
+				final StringWriter canonical = new StringWriter();
+				final byte[] hash = writeCanonical(subjectArray, canonical);
+				if (!Arrays.equals(hash, latestSavedHash)) {
 					// Write the JSON to the file
-					final JSONWriter writer = new JSONWriter(new OutputStreamWriter(context.openFileOutput(FILE_NAME, Context.MODE_PRIVATE)), false);
-					writer.append(subjectArray);
+					final Writer writer = new OutputStreamWriter(context.openFileOutput(FILE_NAME, Context.MODE_PRIVATE));
+					writer.write(canonical.toString());
 					writer.close();
-					// Only save the array when it has been written to the file
-					latestSavedArray = subjectArray;
-				} catch (final IOException e) {
-					e.printStackTrace();
+					// Only save the hash when it has been written to the file
+					latestSavedHash = hash;
 				}
+			} catch (final IOException e) {
+				e.printStackTrace();
 			}
 		}
 	}
 
+	/**
+	 * Writes the canonical form of the array with {@link JSONWriter#canonical(java.io.Writer)}
+	 *
+	 * @param array  The array to write
+	 * @param writer The writer to write to
+	 * @return The content hash of the array
+	 * @throws IOException when the writer throws one
+	 */
+	private static byte[] writeCanonical (final JSONArray array, final Writer writer) throws IOException {
+		final JSONWriter jsonWriter = JSONWriter.canonical(writer);
+		jsonWriter.append(array);
+		return jsonWriter.getContentHash();
+	}
+
 	/**
 	 * Replaces the subject with the same name in the list with the given subject
 	 *
@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.app.grade;
+
+import com.grademanager.parser.grade.Formula;
+import com.grademanager.parser.grade.FormulaCache;
+import com.grademanager.parser.grade.Grade;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable description of a {@link CalculatorWrapper}: its expression and, for the grades which are a {@link GradeWrapper}, the template of their sub-grades. It holds no
+ * values, so one template can be shared by everyone who uses the formula, like all class levels of a school which inherit a subject. A change like {@link
+ * #withChild(String, CalculatorTemplate)} returns a new template which only copies this level and shares everything else.<br/>
+ * The calculator with the values of a user is only created with {@link #createCalculator()} when it is needed, the {@link #toJSON() JSON form} of a new calculator is
+ * created once and shared.<br/>
+ * Templates are hash-consed: {@link #create(String)} and {@link #withChild(String, CalculatorTemplate)} return the existing template when there already is one with the same
+ * expression and the same children. So a sub-expression which is used by several subjects, class levels or schools, like the groups of a formula, is one node in a graph
+ * of templates, with one parsed formula and one JSON form.
+ */
+public final class CalculatorTemplate {
+
+	/**
+	 * All templates which are in use, so equal templates are one object. The templates are only weakly referenced, so unused ones can still be collected
+	 */
+	private static final Map<CalculatorTemplate, WeakReference<CalculatorTemplate>> templates = new WeakHashMap<>();
+
+	/**
+	 * The expression of the calculator
+	 */
+	public final String expression;
+
+	/**
+	 * The parsed expression
+	 */
+	private final Formula formula;
+
+	/**
+	 * The template of the sub-grades of every grade, with the same index as the grades of the {@link #formula}, null when a grade has no sub-grades
+	 */
+	private final CalculatorTemplate[] children;
+
+	/**
+	 * The hash code of the expression and the identities of the children
+	 */
+	private final int hash;
+
+	/**
+	 * The JSON form of a new calculator, created when it is needed for the first time
+	 */
+	private volatile String json;
+
+	private CalculatorTemplate (final Formula formula, final CalculatorTemplate[] children) {
+		this.expression = formula.expression;
+		this.formula = formula;
+		this.children = children != null ? children : new CalculatorTemplate[formula.getSize()];
+
+		int hash = expression.hashCode();
+		for (final CalculatorTemplate child : this.children)
+			hash = hash * 31 + System.identityHashCode(child);
+		this.hash = hash;
+	}
+
+	/**
+	 * Returns the template of the expression, where no grade has sub-grades
+	 *
+	 * @param expression The expression
+	 * @return The shared template
+	 * @throws com.grademanager.parser.SyntaxException when the expression is not valid
+	 */
+	public static CalculatorTemplate create (final String expression) {
+		return intern(new CalculatorTemplate(FormulaCache.instance.get(expression), null));
+	}
+
+	/**
+	 * Returns the template in use which is equal to the given one, or the given one when there is no such template yet
+	 *
+	 * @param template The template
+	 * @return The shared template
+	 */
+	private static CalculatorTemplate intern (final CalculatorTemplate template) {
+		synchronized (templates) {
+			final WeakReference<CalculatorTemplate> reference = templates.get(template);
+			final CalculatorTemplate shared = reference != null ? reference.get() : null;
+			if (shared != null)
+				return shared;
+			templates.put(template, new WeakReference<>(template));
+			return template;
+		}
+	}
+
+	/**
+	 * Returns the template where the grade with the name has the given sub-grades. Only this level is copied, the other children are shared.
+	 *
+	 * @param name  The name of the grade
+	 * @param child The template of the sub-grades, or null to remove them
+	 * @return The new template, or this template when it has no grade with the name
+	 */
+	public CalculatorTemplate withChild (final String name, final CalculatorTemplate child) {
+		final int index = indexOf(name);
+		if (index == -1 || children[index] == child)
+			return this;
+
+		final CalculatorTemplate[] children = this.children.clone();
+		children[index] = child;
+		return intern(new CalculatorTemplate(formula, children));
+	}
+
+	/**
+	 * Returns the template of the sub-grades of the grade with the name
+	 *
+	 * @param name The name of the grade
+	 * @return The template, or null when there is no such grade or it has no sub-grades
+	 */
+	public CalculatorTemplate getChild (final String name) {
+		final int index = indexOf(name);
+		return index != -1 ? children[index] : null;
+	}
+
+	/**
+	 * Checks if the formula has a grade with the name
+	 *
+	 * @param name The name of the grade
+	 * @return Whether the grade exists
+	 */
+	public boolean hasGrade (final String name) {
+		return indexOf(name) != -1;
+	}
+
+	/**
+	 * Finds the first grade with the name, like the children in the schools are matched
+	 *
+	 * @param name The name of the grade
+	 * @return The index or -1 when there is no such grade
+	 */
+	private int indexOf (final String name) {
+		for (int i = 0; i < formula.getSize(); i++)
+			if (formula.getName(i).equals(name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Creates a new calculator of this template, where none of the grades is set
+	 *
+	 * @return The calculator
+	 */
+	public CalculatorWrapper createCalculator () {
+		final Grade[] grades = formula.createGrades();
+		for (int i = 0; i < grades.length; i++) {
+			if (children[i] != null) {
+				final GradeWrapper wrapper = new GradeWrapper(grades[i]);
+				wrapper.setSubGrades(children[i].createCalculator());
+				grades[i] = wrapper;
+			}
+		}
+		return new CalculatorWrapper(grades, expression);
+	}
+
+	/**
+	 * Returns the JSON form of a new calculator of this template, as written by {@link CalculatorWrapper#converter}. It is only created once, so this is the cheap way to hand
+	 * over a formula.
+	 *
+	 * @return The JSON form
+	 */
+	public String toJSON () {
+		String json = this.json;
+		if (json == null) {
+			json = CalculatorWrapper.converter.convert(createCalculator()).toString();
+			this.json = json;
+		}
+		return json;
+	}
+
+	@Override
+	public boolean equals (final Object object) {
+		if (object == this)
+			return true;
+		if (!(object instanceof CalculatorTemplate))
+			return false;
+
+		// The children are shared templates as well, so they are equal when they are the same object
+		final CalculatorTemplate template = (CalculatorTemplate) object;
+		if (hash != template.hash || !expression.equals(template.expression) || children.length != template.children.length)
+			return false;
+		for (int i = 0; i < children.length; i++)
+			if (children[i] != template.children[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode () {
+		return hash;
+	}
+}
@@ -15,10 +15,18 @@ package com.grademanager.app.grade;
 import com.grademanager.app.converter.JsonConverter;
 import com.grademanager.parser.grade.Calculator;
 import com.grademanager.parser.grade.ExpressionCalculator;
+import com.grademanager.parser.grade.FlatFormula;
+import com.grademanager.parser.grade.Formula;
+import com.grademanager.parser.grade.FormulaCache;
 import com.grademanager.parser.grade.Grade;
+import com.grademanager.parser.grade.GradeSolver;
+import com.grademanager.parser.grade.RunningCalculator;
 import com.grademanager.parser.json.JSONArray;
 import com.grademanager.parser.json.JSONObject;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.grademanager.app.util.ConstantKeys.KEY_EXPRESSION;
 import static com.grademanager.app.util.ConstantKeys.KEY_GRADES;
 
@@ -26,7 +34,7 @@ import static com.grademanager.app.util.ConstantKeys.KEY_GRADES;
  * A wrapper for all currently implemented {@link Calculator} objects. This simply holds the expression which is saved when the subjects get written to an internal private file.
  * To make it more organized, this class also contains its {@link JsonConverter} to convert from and to a {@link JSONObject}
  */
-public class CalculatorWrapper extends Calculator implements Cloneable {
+public class CalculatorWrapper extends RunningCalculator implements Cloneable {
 
 	/**
 	 * The converter for this class
@@ -59,11 +67,54 @@ public class CalculatorWrapper extends Calculator implements Cloneable {
 		}
 	};
 
+	/**
+	 * Tells {@link FlatFormula} which grades are a {@link GradeWrapper} with sub-grades
+	 */
+	private static final FlatFormula.Resolver resolver = new FlatFormula.Resolver() {
+		@Override
+		public Calculator getCalculator (final Grade grade) {
+			if (grade instanceof GradeWrapper)
+				return ((GradeWrapper) grade).calculator;
+			return null;
+		}
+	};
+
+	/**
+	 * A {@link Grade} in this calculator or one of its wrappers, with the wrappers which lead to it
+	 */
+	private static final class IndexEntry {
+
+		/**
+		 * The grade
+		 */
+		private final Grade grade;
+
+		/**
+		 * The wrappers from this calculator down to the calculator which holds the grade, empty when the grade is in this calculator
+		 */
+		private final GradeWrapper[] path;
+
+		private IndexEntry (final Grade grade, final GradeWrapper[] path) {
+			this.grade = grade;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * The path of a grade which is in this calculator itself
+	 */
+	private static final GradeWrapper[] NO_WRAPPERS = new GradeWrapper[0];
+
 	/**
 	 * The expression used
 	 */
 	public final String expression;
 
+	/**
+	 * All grades in this calculator and its wrappers by name, built when needed and dropped when the structure changes
+	 */
+	private Map<String, IndexEntry> index;
+
 	/**
 	 * Creates a normal {@link }Calculator}
 	 *
@@ -85,57 +136,129 @@ public class CalculatorWrapper extends Calculator implements Cloneable {
 	}
 
 	@Override
-	public double calculateGrade (final Grade gradeToCalculate, final double average) {
-		// Check if the grade is in a wrapper
-		if (super.getGrade(gradeToCalculate.name) == null) {
-			// This grade is in a grade wrapper, lets find the grade
-			for (final Grade grade : grades) {
-				if (grade instanceof GradeWrapper) {
-					// Found the grade, calculate the average of this wrapper
-					final GradeWrapper wrapper = (GradeWrapper) grade;
-					if (wrapper.hasGrade(gradeToCalculate))
-						return wrapper.calculator.calculateGrade(gradeToCalculate, super.calculateGrade(wrapper, average));
-				}
+	public double calculateGrade (final Grade gradeToCalculate, double average) {
+		// Walk down the wrappers which contain the grade: each time calculate which value the wrapper needs, which is the average its own calculator needs
+		final IndexEntry entry = gradeToCalculate != null ? getIndex().get(gradeToCalculate.name) : null;
+		if (entry != null && entry.grade == gradeToCalculate) {
+			CalculatorWrapper calculator = this;
+			for (final GradeWrapper wrapper : entry.path) {
+				average = calculator.calculateDirectGrade(wrapper, average);
+				calculator = wrapper.calculator;
 			}
+			return calculator.calculateDirectGrade(gradeToCalculate, average);
 		}
 		// Simply let the super class do the work, since it is the default
 		return super.calculateGrade(gradeToCalculate, average);
 	}
 
+	@Override
+	public GradeSolver createSolver (final Grade gradeToCalculate) {
+		// The same walk as calculateGrade, but the solvers of all levels are combined into one
+		final IndexEntry entry = gradeToCalculate != null ? getIndex().get(gradeToCalculate.name) : null;
+		if (entry != null && entry.grade == gradeToCalculate) {
+			GradeSolver solver = GradeSolver.IDENTITY;
+			CalculatorWrapper calculator = this;
+			for (final GradeWrapper wrapper : entry.path) {
+				solver = solver.then(calculator.createDirectSolver(wrapper));
+				calculator = wrapper.calculator;
+			}
+			return solver.then(calculator.createDirectSolver(gradeToCalculate));
+		}
+		return super.createSolver(gradeToCalculate);
+	}
+
+	/**
+	 * Creates the solver of a grade in {@link #grades}, without looking in the wrappers
+	 *
+	 * @param gradeToCalculate The grade to calculate the value of
+	 * @return The solver
+	 */
+	private GradeSolver createDirectSolver (final Grade gradeToCalculate) {
+		return super.createSolver(gradeToCalculate);
+	}
+
+	/**
+	 * Calculates the value of a grade in {@link #grades}, without looking in the wrappers
+	 *
+	 * @param gradeToCalculate The grade to calculate the value of
+	 * @param average          The average to achieve
+	 * @return the grade's value
+	 */
+	private double calculateDirectGrade (final Grade gradeToCalculate, final double average) {
+		return super.calculateGrade(gradeToCalculate, average);
+	}
+
 	@Override
 	public Grade getGrade (final String name) {
-		final Grade grade = super.getGrade(name);
-		if (grade != null)
-			return grade; // Just simply return it because it has been found
-
-		// Do a custom search on the wrappers, because the regular ones should have been found
-		for (final Grade subGrade : grades) {
-			if (subGrade instanceof GradeWrapper) {
-				final CalculatorWrapper subCalculator = ((GradeWrapper) subGrade).calculator;
-				if (subCalculator != null) {
-					final Grade foundGrade = subCalculator.getGrade(name);
-					if (foundGrade != null)
-						return foundGrade;
+		final IndexEntry entry = getIndex().get(name);
+		return entry != null ? entry.grade : null;
+	}
+
+	/**
+	 * Returns the {@link #index}, it is built when it is not available
+	 *
+	 * @return The index of all grades in this calculator and its wrappers
+	 */
+	private Map<String, IndexEntry> getIndex () {
+		if (index == null) {
+			final Map<String, IndexEntry> index = new HashMap<>();
+
+			// The grades of this calculator come first, then those of the wrappers in order, just like a search through the calculators would find them
+			for (final Grade grade : grades)
+				if (!index.containsKey(grade.name))
+					index.put(grade.name, new IndexEntry(grade, NO_WRAPPERS));
+
+			for (final Grade grade : grades) {
+				if (grade instanceof GradeWrapper) {
+					final GradeWrapper wrapper = (GradeWrapper) grade;
+					if (wrapper.calculator != null) {
+						for (final Map.Entry<String, IndexEntry> subEntry : wrapper.calculator.getIndex().entrySet()) {
+							if (!index.containsKey(subEntry.getKey())) {
+								final GradeWrapper[] subPath = subEntry.getValue().path;
+								final GradeWrapper[] path = new GradeWrapper[subPath.length + 1];
+								path[0] = wrapper;
+								System.arraycopy(subPath, 0, path, 1, subPath.length);
+								index.put(subEntry.getKey(), new IndexEntry(subEntry.getValue().grade, path));
+							}
+						}
+					}
 				}
 			}
+			this.index = index;
 		}
-		return grade;
+		return index;
+	}
+
+	@Override
+	protected void onStructureChanged () {
+		index = null;
 	}
 
 	/**
-	 * Creates the actual {@link ExpressionCalculator}
+	 * Creates the grades of the expression. The expression is only parsed once, after that the {@link Formula} comes from the {@link FormulaCache}
 	 *
 	 * @param expression The expression to use
 	 * @return A list of {@link Grade} objects to create a normal calculator with
 	 */
 	private static Grade[] getGrades (final String expression) {
-		final Calculator calculator = new ExpressionCalculator(expression);
-		return calculator.grades.toArray(new Grade[calculator.grades.size()]);
+		return FormulaCache.instance.get(expression).createGrades();
+	}
+
+	/**
+	 * Flattens this calculator and the calculators of all {@link GradeWrapper} objects in it into one {@link FlatFormula}. The formula uses the grades of this calculator
+	 * directly, but it has to be flattened again when a wrapper gets other sub-grades.
+	 *
+	 * @return The flattened formula
+	 */
+	public FlatFormula flatten () {
+		return FlatFormula.compile(this, resolver);
 	}
 
 	@Override
 	public CalculatorWrapper clone () {
-		final Calculator calculator = super.clone();
-		return new CalculatorWrapper(calculator.grades.toArray(new Grade[calculator.grades.size()]), expression);
+		final Grade[] grades = new Grade[this.grades.size()];
+		for (int i = 0; i < grades.length; i++)
+			grades[i] = this.grades.get(i).clone();
+		return new CalculatorWrapper(grades, expression);
 	}
 }
@@ -14,6 +14,7 @@ package com.grademanager.app.grade;
 
 
 import com.grademanager.parser.grade.Grade;
+import com.grademanager.parser.grade.RunningCalculator;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -21,8 +22,10 @@ import java.util.List;
 /**
  * A wrapper class for {@link Grade} so it can contain sub-expressions which are stored in a {@link CalculatorWrapper}. The converter of this class can be found in {@link
  * com.grademanager.app.grade.GradeConverter}.<br/>
+ * The value of this wrapper is the average of its calculator. It is kept in {@link #value} and {@link #isSet}: the calculator tells this wrapper when its average changes,
+ * and this wrapper then tells its own listener (the calculator it is in). So reading the value of a wrapper, at any depth, does not calculate anything.
  */
-public class GradeWrapper extends Grade {
+public class GradeWrapper extends Grade implements RunningCalculator.Listener {
 
 	/**
 	 * The calculator with sub grades
@@ -34,6 +37,11 @@ public class GradeWrapper extends Grade {
 	 */
 	private List<Grade> subGrades = new ArrayList<>();
 
+	/**
+	 * Whether {@link #value} and {@link #isSet} still have to be taken from the {@link #calculator}
+	 */
+	private boolean dirty = true;
+
 	/**
 	 * Setup super values
 	 *
@@ -61,7 +69,14 @@ public class GradeWrapper extends Grade {
 	 */
 	public void setSubGrades (final CalculatorWrapper calculator) {
 		if (calculator != null && calculator.grades.size() > 0) {
+			final boolean wasSet = hasValue();
+			final double oldValue = getValue();
+			if (this.calculator != null)
+				this.calculator.setListener(null);
 			this.calculator = calculator;
+			calculator.setListener(this);
+			update(wasSet, oldValue);
+			notifyStructureChanged();
 
 			for (final Grade grade : calculator.grades) {
 				if (grade instanceof GradeWrapper) {
@@ -81,22 +96,61 @@ public class GradeWrapper extends Grade {
 	 * @return A boolean whether it exists or not
 	 */
 	public boolean hasGrade (final Grade grade) {
-		if (calculator != null) {
-			for (final Grade _grade : calculator.grades) {
-				if (grade instanceof GradeWrapper && ((GradeWrapper) _grade).hasGrade(grade))
-					return true;
-				else if (_grade.equals(grade))
-					return true;
-			}
+		return calculator != null && grade != null && calculator.getGrade(grade.name) == grade;
+	}
+
+	/**
+	 * Takes the value from the {@link #calculator} and notifies the listener of this grade when it changed
+	 *
+	 * @param wasSet   Whether this grade was set before
+	 * @param oldValue The value before
+	 */
+	private void update (final boolean wasSet, final double oldValue) {
+		refresh();
+		if (wasSet != isSet || oldValue != value)
+			notifyChanged(wasSet, oldValue);
+	}
+
+	/**
+	 * Takes the value from the {@link #calculator} without notifying anyone
+	 */
+	private void refresh () {
+		dirty = false;
+		isSet = calculator != null && calculator.hasValue();
+		value = isSet ? calculator.calculateAverage() : 0D;
+	}
+
+	@Override
+	public void onAverageChanged (final RunningCalculator calculator, final boolean wasSet, final double oldAverage) {
+		if (calculator != this.calculator)
+			return;
+		if (dirty) {
+			// Nobody has read the value yet, so nobody needs to know the old one
+			refresh();
+		} else {
+			update(isSet, value);
 		}
-		return false;
+	}
+
+	@Override
+	public void onStructureChanged (final RunningCalculator calculator) {
+		if (calculator == this.calculator)
+			notifyStructureChanged();
+	}
+
+	/**
+	 * Tells the calculator this wrapper is in that its structure has changed
+	 */
+	private void notifyStructureChanged () {
+		if (getListener() instanceof RunningCalculator)
+			((RunningCalculator) getListener()).notifyStructureChanged();
 	}
 
 	@Override
 	public double getValue () {
-		if (hasValue())
-			return calculator.calculateAverage();
-		return 0D;
+		if (dirty)
+			refresh();
+		return value;
 	}
 
 	@Override
@@ -107,16 +161,20 @@ public class GradeWrapper extends Grade {
 
 	@Override
 	public boolean hasValue () {
-		if (calculator != null)
-			for (final Grade grade : calculator.grades)
-				if (grade.hasValue())
-					return true;
-		return false;
+		if (dirty)
+			refresh();
+		return isSet;
 	}
 
 	@Override
 	public void reset () {
+		final boolean wasSet = hasValue();
+		final double oldValue = getValue();
+		if (calculator != null)
+			calculator.setListener(null);
 		calculator = null;
+		update(wasSet, oldValue);
+		notifyStructureChanged();
 	}
 
 	/**
@@ -106,6 +106,11 @@ public class SetupActivity extends BaseActivity implements View.OnFocusChangeLis
 	 */
 	private EditText inputFormula;
 
+	/**
+	 * The calculator of the parsed formula, which is kept so an edit of the formula only parses the part which changed
+	 */
+	private ExpressionCalculator calculator;
+
 	@Override
 	public int getMainLayout () {
 		return R.layout.setup;
@@ -476,13 +481,28 @@ public class SetupActivity extends BaseActivity implements View.OnFocusChangeLis
 		if (expression == null || (expression = expression.trim()).isEmpty())
 			return;
 
+		// Only build the calculator when the expression is valid, checking it does not create any objects
+		if (ExpressionCalculator.validate(expression) != ExpressionCalculator.VALID) {
+			adapter.clear();
+			calculator = null;
+			flagParsed = false;
+			Toast.makeText(this, R.string.toast_invalid_formula, Toast.LENGTH_SHORT).show();
+			return;
+		}
+
 		try {
+			// An edit of the parsed formula only changes the grades which differ
+			if (calculator != null && flagParsed) {
+				applyDiff(calculator.reparse(expression));
+				return;
+			}
+
 			// Hard backup
 			final List<Grade> grades = new ArrayList<>();
 			for (int i = 0; i < adapter.getCount(); i++)
 				grades.add(adapter.getItem(i).clone());
 
-			final ExpressionCalculator calculator = new ExpressionCalculator(expression);
+			calculator = new ExpressionCalculator(expression);
 			// Parsed correctly, set the data
 			adapter.clear();
 			if (calculator.grades.size() > 0) {
@@ -499,25 +519,8 @@ public class SetupActivity extends BaseActivity implements View.OnFocusChangeLis
 							final Grade item = adapter.getItem(index);
 							adapter.remove(item);
 
-							if (item.weighting != grade.weighting) {
-								// Recreate objects with the correct weightings
-								if (grade instanceof GradeWrapper) {
-									// This always needs to be done because a sub-calculator is available
-									final GradeWrapper wrapper = (GradeWrapper) grade;
-
-									final GradeWrapper replacement = new GradeWrapper(grade.name, item.weighting);
-									replacement.setSubGrades(wrapper.calculator);
-									adapter.insert(replacement, index);
-								} else if (grade.hasValue()) {
-									// This is only useful when the grade has a value
-									final Grade replacement = new Grade(grade.name, item.weighting);
-									replacement.setValue(grade.getValue());
-									adapter.insert(replacement, index);
-								}
-							} else {
-								// Just insert the grade
-								adapter.insert(grade, index);
-							}
+							// Recreate objects with the correct weightings, or just insert the grade
+							adapter.insert(item.weighting != grade.weighting ? reweight(grade, item) : grade, index);
 						}
 					}
 				}
@@ -527,8 +530,61 @@ public class SetupActivity extends BaseActivity implements View.OnFocusChangeLis
 			}
 		} catch (final SyntaxException e) {
 			adapter.clear();
+			calculator = null;
 			flagParsed = false;
 			Toast.makeText(this, R.string.toast_invalid_formula, Toast.LENGTH_SHORT).show();
 		}
 	}
+
+	/**
+	 * Applies the grades which changed to the {@link #adapter}, the other grades keep their objects and values
+	 *
+	 * @param diff The grades which changed with the new calculator
+	 */
+	private void applyDiff (final ExpressionCalculator.Diff diff) {
+		calculator = diff.calculator;
+		if (diff.isEmpty())
+			return;
+
+		adapter.setNotifyOnChange(false);
+		for (final Grade grade : diff.removed) {
+			final int index = getIndex(grade.name);
+			if (index > -1)
+				adapter.remove(adapter.getItem(index));
+		}
+		for (final Grade grade : diff.reweighted) {
+			final int index = getIndex(grade.name);
+			if (index > -1) {
+				final Grade item = adapter.getItem(index);
+				adapter.remove(item);
+				adapter.insert(reweight(item, grade), index);
+			}
+		}
+		// The added grades are in the order of the calculator, so the grades before them are in the adapter already
+		for (final Grade grade : diff.added)
+			adapter.insert(grade, diff.calculator.grades.indexOf(grade));
+		adapter.notifyDataSetChanged();
+	}
+
+	/**
+	 * Creates the grade which replaces a grade of which the weighting changed. A {@link GradeWrapper} keeps its sub-calculator and a grade keeps its value
+	 *
+	 * @param grade The grade in the adapter
+	 * @param item  The grade with the new weighting
+	 * @return The replacement
+	 */
+	private static Grade reweight (final Grade grade, final Grade item) {
+		if (grade instanceof GradeWrapper) {
+			// This always needs to be done because a sub-calculator is available
+			final GradeWrapper replacement = new GradeWrapper(grade.name, item.weighting);
+			replacement.setSubGrades(((GradeWrapper) grade).calculator);
+			return replacement;
+		} else if (grade.hasValue()) {
+			// This is only useful when the grade has a value
+			final Grade replacement = new Grade(grade.name, item.weighting);
+			replacement.setValue(grade.getValue());
+			return replacement;
+		}
+		return item;
+	}
 }
@@ -12,6 +12,7 @@
 
 package com.grademanager.app.school;
 
+import com.grademanager.app.grade.CalculatorTemplate;
 import com.grademanager.app.grade.CalculatorWrapper;
 
 /**
@@ -37,12 +38,23 @@ public abstract class IntegratedSchool {
 		public abstract String[] getSupportedSubjects ();
 
 		/**
-		 * Returns the formula for the given subject
+		 * Returns the template of the formula for the given subject. It is shared, so this does not copy anything
 		 *
 		 * @param subject The subject which we need the formula from
-		 * @return A valid average expression
+		 * @return The template, or null when the subject is not supported
 		 */
-		public abstract CalculatorWrapper getFormula (final String subject);
+		public abstract CalculatorTemplate getTemplate (final String subject);
+
+		/**
+		 * Returns a new calculator of the formula for the given subject
+		 *
+		 * @param subject The subject which we need the formula from
+		 * @return A valid average expression, or null when the subject is not supported
+		 */
+		public CalculatorWrapper getFormula (final String subject) {
+			final CalculatorTemplate template = getTemplate(subject);
+			return template != null ? template.createCalculator() : null;
+		}
 
 		/**
 		 * Checks if subject is in the {@link #getSupportedSubjects()} array
@@ -14,11 +14,8 @@ package com.grademanager.app.school;
 
 import android.content.Context;
 import com.grademanager.app.R;
-import com.grademanager.app.grade.CalculatorWrapper;
-import com.grademanager.app.grade.GradeWrapper;
+import com.grademanager.app.grade.CalculatorTemplate;
 import com.grademanager.parser.SyntaxException;
-import com.grademanager.parser.grade.Calculator;
-import com.grademanager.parser.grade.Grade;
 import com.grademanager.parser.json.JSONArray;
 import com.grademanager.parser.json.JSONObject;
 
@@ -48,9 +45,9 @@ public class JsonIntegratedSchool extends IntegratedSchool {
 		private final String[] subjects;
 
 		/**
-		 * All corresponding calculators
+		 * All corresponding templates, these are shared with every class level and school which uses the same formula
 		 */
-		private final CalculatorWrapper[] calculators;
+		private final CalculatorTemplate[] templates;
 
 		/**
 		 * Creates a new ClassLevel
@@ -71,7 +68,7 @@ public class JsonIntegratedSchool extends IntegratedSchool {
 			final JSONArray subjectArray = object.getJSONArray(KEY_SUBJECTS);
 
 			subjects = new String[subjectArray.getSize()];
-			calculators = new CalculatorWrapper[subjectArray.getSize()];
+			templates = new CalculatorTemplate[subjectArray.getSize()];
 
 			// Decode the subjects
 			for (int i = 0; i < subjectArray.getSize(); i++) {
@@ -84,49 +81,41 @@ public class JsonIntegratedSchool extends IntegratedSchool {
 					subjects[i] = localisedSubject;
 
 				// Check if the parentClassLevel has it, then try to grab it from the actual key
-				CalculatorWrapper formula = null;
+				CalculatorTemplate formula = null;
 				if (parentClassLevel != null && parentClassLevel.hasSubject(subjects[i]))
-					formula = parentClassLevel.getFormula(subjects[i]);
+					formula = parentClassLevel.getTemplate(subjects[i]);
 
 				if (subject.has(KEY_FORMULA))
-					formula = new CalculatorWrapper(subject.getString(KEY_FORMULA));
+					formula = CalculatorTemplate.create(subject.getString(KEY_FORMULA));
 				// If the formula is null, then formula must be defined -> exception
 				if (formula == null)
 					throw new SyntaxException("Key formula must be defined!");
 
-				recurseChildren(subject, formula);
-				calculators[i] = formula;
+				templates[i] = recurseChildren(subject, formula);
 			}
 			parentSchool.add(name, this); // Add this object to the parent
 		}
 
 		/**
-		 * Recurses into the child object to set the parent calculator properly
+		 * Recurses into the child object to give the grades of the parent template their sub-grades. The parent is not changed, since it can be shared with another class
+		 * level. Equal children of different subjects and class levels end up as the same template
 		 *
 		 * @param object The object which can have child objects
-		 * @param parent The parent calculator
+		 * @param parent The parent template
+		 * @return The template with the children
 		 */
-		private void recurseChildren (final JSONObject object, final Calculator parent) {
-			if (object.has(KEY_CHILDREN) && parent != null) {
+		private static CalculatorTemplate recurseChildren (final JSONObject object, CalculatorTemplate parent) {
+			if (object.has(KEY_CHILDREN)) {
 				final JSONArray array = object.getJSONArray(KEY_CHILDREN);
 
 				for (int i = 0; i < array.getSize(); i++) {
 					final JSONObject child = array.getJSONObject(i);
 					final String childName = child.getString(KEY_NAME);
-
-					for (int j = 0; j < parent.grades.size(); j++) {
-						final Grade grade = parent.grades.get(j);
-						if (grade.name.equals(childName)) {
-							final GradeWrapper wrapper = new GradeWrapper(grade);
-							wrapper.setSubGrades(new CalculatorWrapper(child.getString(KEY_FORMULA)));
-							parent.grades.set(j, wrapper);
-
-							recurseChildren(child, wrapper.calculator);
-							break;
-						}
-					}
+					if (parent.hasGrade(childName))
+						parent = parent.withChild(childName, recurseChildren(child, CalculatorTemplate.create(child.getString(KEY_FORMULA))));
 				}
 			}
+			return parent;
 		}
 
 
@@ -136,10 +125,10 @@ public class JsonIntegratedSchool extends IntegratedSchool {
 		}
 
 		@Override
-		public CalculatorWrapper getFormula (final String subject) {
+		public CalculatorTemplate getTemplate (final String subject) {
 			for (int i = 0; i < subjects.length; i++)
 				if (subjects[i].equals(subject))
-					return calculators[i].clone();
+					return templates[i];
 			return null;
 		}
 	}
@@ -25,7 +25,7 @@ import android.widget.TextView;
 import com.grademanager.app.BaseActivity;
 import com.grademanager.app.R;
 import com.grademanager.app.converter.ObjectAdapter;
-import com.grademanager.app.grade.CalculatorWrapper;
+import com.grademanager.app.grade.CalculatorTemplate;
 
 import java.util.Arrays;
 
@@ -106,11 +106,11 @@ public class SchoolDialogActivity extends BaseActivity {
 						public void onItemClick (final AdapterView<?> adapterView, final View view, final int position, final long id) {
 							// get the subject name
 							final String subject = classLevelAdapter.getItem(position);
-							final CalculatorWrapper wrapper = level.getFormula(classLevelAdapter.getItem(position));
+							final CalculatorTemplate template = level.getTemplate(subject);
 
-							// send the result back
+							// send the result back, the JSON of the template is shared so nothing has to be copied
 							final Intent intent = new Intent().putExtra(KEY_SUBJECT, subject).putExtra(KEY_CLASSES, classLevel)
-									.putExtra(KEY_CALCULATOR, CalculatorWrapper.converter.convert(wrapper).toString());
+									.putExtra(KEY_CALCULATOR, template.toJSON());
 							setResult(RESULT_OK, intent);
 							finish();
 						}
@@ -27,6 +27,7 @@ import com.grademanager.app.tree.ITreeNode;
 import com.grademanager.app.tree.TreeActivity;
 import com.grademanager.app.util.TextWatcherProxy;
 import com.grademanager.parser.grade.Grade;
+import com.grademanager.parser.grade.GradeSolver;
 
 /**
  * This activity is based on {@link TreeActivity} because this class shows a tree from a {@link SubjectManager.Subject}. This activity
@@ -146,6 +147,8 @@ public class SubjectTreeActivity extends TreeActivity implements View.OnLongClic
 			textView = (TextView) view.findViewById(android.R.id.text1);
 
 		final Grade grade = subject.calculator.getGrade(textView.getText().toString());
+		// The grades do not change while the dialog is shown, so the solver can be reused for every input
+		final GradeSolver solver = subject.calculator.createSolver(grade);
 		// Create a new dialog
 		final AlertDialog.Builder builder = new AlertDialog.Builder(this, AlertDialog.THEME_HOLO_LIGHT);
 		builder.setTitle(getString(R.string.predict_grade_value));
@@ -163,7 +166,7 @@ public class SubjectTreeActivity extends TreeActivity implements View.OnLongClic
 			public void afterTextChanged (final Editable editable) {
 				final String input = editable.toString().trim();
 				if (!input.isEmpty()) {
-					inputCalc.setText(String.format(format, grade.name, SubjectConverter.formatAverage(subject.calculator.calculateGrade(grade, Double.valueOf(input)))));
+					inputCalc.setText(String.format(format, grade.name, SubjectConverter.formatAverage(solver.solve(Double.valueOf(input)))));
 				} else {
 					inputCalc.setText(String.format(format, grade.name, "-"));
 				}
@@ -0,0 +1,652 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.grademanager.parser.Constants.FORMAT_EXPECTED_CHAR;
+
+/**
+ * A calculator for expressions with aggregate functions, on top of the weighted sums of {@link com.grademanager.parser.grade.ExpressionCalculator}:
+ * <ul>
+ * <li><code>best(k, a, b, ...)</code>: the average of the k highest values, like "best 3 of 4 tests"</li>
+ * <li><code>drop(k, a, b, ...)</code>: the average of all values except the k lowest</li>
+ * <li><code>max(a, b, ...)</code> and <code>min(a, b, ...)</code>: the highest and lowest value</li>
+ * <li><code>round(a)</code> and <code>round(a, decimals)</code>: the value rounded half up, to 1 decimal by default</li>
+ * </ul>
+ * The arguments can be grades, weighted sums and other functions, for instance <code>(2best(3, T1, T2, T3, T4)+round((P1+P2)/2))/3</code>. Just like in a {@link Calculator},
+ * only the set values count: a weighted sum is the weighted average of its set parts and a function only looks at its set arguments, so a group without any set value is
+ * left out. The divisor of a sum is therefore only there for readability.<br/>
+ * The highest values are found with a quickselect in linear time, instead of sorting them. Every function is monotone, so the average only goes up when a grade goes up; a
+ * grade is calculated with a regula falsi search, which solves the linear pieces of the average directly.
+ *
+ * @author Wesley A
+ */
+public class AggregateCalculator extends Calculator {
+
+	// Constants which are used within this class only
+	private static final String FUNCTION_BEST = "best";
+
+	private static final String FUNCTION_DROP = "drop";
+
+	private static final String FUNCTION_MAX = "max";
+
+	private static final String FUNCTION_MIN = "min";
+
+	private static final String FUNCTION_ROUND = "round";
+
+	private static final int DEFAULT_ROUND_DECIMALS = 1;
+
+	private static final int MAX_ROUND_DECIMALS = 3;
+
+	/**
+	 * The search for a grade gives up outside of this range
+	 */
+	private static final double SEARCH_LIMIT = 1E6;
+
+	private static final double SEARCH_START = 10D;
+
+	private static final int MAX_SEARCH_STEPS = 200;
+
+	private static final double SNAP_SCALE = 1E6;
+
+	private static final double SNAP_TOLERANCE = 1E-9;
+
+	private static final char CHAR_BRACKET_CLOSE = ')';
+
+	private static final char CHAR_COMMA = ',';
+
+	private static final String EXCEPTION_NEED_VARIABLE = "A variable is needed here!";
+
+	private static final String FORMAT_UNEXPECTED_TOKEN = "Unexpected '%s' at %d";
+
+	private static final String FORMAT_UNKNOWN_FUNCTION = "Unknown function '%s' at %d";
+
+	private static final String FORMAT_INVALID_COUNT = "Invalid count %s at %d";
+
+	private static final String FORMAT_INVALID_WEIGHTING = "Invalid weighting %s at %d";
+
+	/**
+	 * A part of the expression, which calculates its value from the values of the grades. NaN means that the part has no value
+	 */
+	private static abstract class Node {
+
+		/**
+		 * Calculates the value of this part
+		 *
+		 * @param values The values of the grades, NaN when a grade is not set
+		 * @return The value, or NaN when none of the grades it depends on is set
+		 */
+		abstract double evaluate (double[] values);
+	}
+
+	/**
+	 * A single grade
+	 */
+	private static final class GradeNode extends Node {
+
+		private final int index;
+
+		private GradeNode (final int index) {
+			this.index = index;
+		}
+
+		@Override
+		double evaluate (final double[] values) {
+			return values[index];
+		}
+	}
+
+	/**
+	 * The weighted average of the set parts
+	 */
+	private static final class SumNode extends Node {
+
+		private final Node[] parts;
+
+		private final double[] weightings;
+
+		private SumNode (final Node[] parts, final double[] weightings) {
+			this.parts = parts;
+			this.weightings = weightings;
+		}
+
+		@Override
+		double evaluate (final double[] values) {
+			double total = 0D;
+			double totalWeighting = 0D;
+			for (int i = 0; i < parts.length; i++) {
+				final double value = parts[i].evaluate(values);
+				if (!Double.isNaN(value)) {
+					total += value * weightings[i];
+					totalWeighting += weightings[i];
+				}
+			}
+			return totalWeighting != 0D ? total / totalWeighting : Double.NaN;
+		}
+	}
+
+	/**
+	 * The average of the highest values of the set arguments: a fixed amount for best, or all but a fixed amount for drop
+	 */
+	private static final class SelectNode extends Node {
+
+		private final Node[] arguments;
+
+		/**
+		 * The amount of values to keep, or to drop when {@link #drop} is true
+		 */
+		private final int count;
+
+		private final boolean drop;
+
+		/**
+		 * The set values of the arguments, reused for every evaluation
+		 */
+		private final double[] selection;
+
+		private SelectNode (final Node[] arguments, final int count, final boolean drop) {
+			this.arguments = arguments;
+			this.count = count;
+			this.drop = drop;
+			this.selection = new double[arguments.length];
+		}
+
+		@Override
+		double evaluate (final double[] values) {
+			int size = 0;
+			for (final Node argument : arguments) {
+				final double value = argument.evaluate(values);
+				if (!Double.isNaN(value))
+					selection[size++] = value;
+			}
+			if (size == 0)
+				return Double.NaN;
+
+			// With less set values than asked for, the set ones count; at least one value is always kept
+			final int keep = drop ? Math.max(1, size - count) : Math.min(count, size);
+			if (keep < size)
+				selectHighest(selection, size, keep);
+
+			double total = 0D;
+			for (int i = 0; i < keep; i++)
+				total += selection[i];
+			return total / keep;
+		}
+	}
+
+	/**
+	 * The highest or lowest value of the set arguments
+	 */
+	private static final class ExtremeNode extends Node {
+
+		private final Node[] arguments;
+
+		private final boolean max;
+
+		private ExtremeNode (final Node[] arguments, final boolean max) {
+			this.arguments = arguments;
+			this.max = max;
+		}
+
+		@Override
+		double evaluate (final double[] values) {
+			double extreme = Double.NaN;
+			for (final Node argument : arguments) {
+				final double value = argument.evaluate(values);
+				if (!Double.isNaN(value) && (Double.isNaN(extreme) || (max ? value > extreme : value < extreme)))
+					extreme = value;
+			}
+			return extreme;
+		}
+	}
+
+	/**
+	 * The value of the argument rounded half up
+	 */
+	private static final class RoundNode extends Node {
+
+		private final Node argument;
+
+		private final int decimals;
+
+		private final double scale;
+
+		private RoundNode (final Node argument, final int decimals) {
+			this.argument = argument;
+			this.decimals = decimals;
+			this.scale = Math.pow(10, decimals);
+		}
+
+		@Override
+		double evaluate (final double[] values) {
+			final double value = argument.evaluate(values);
+			if (Double.isNaN(value))
+				return value;
+			return FixedPoint.round(value, decimals) / scale;
+		}
+	}
+
+	/**
+	 * Solves a grade with {@link #calculateGrade(Grade, double)} on a copy of the calculator, so the solver keeps the values it was created with
+	 */
+	private static final class SearchSolver extends GradeSolver {
+
+		private final AggregateCalculator calculator;
+
+		private final Grade grade;
+
+		private SearchSolver (final AggregateCalculator calculator, final Grade grade) {
+			super(Double.NaN, Double.NaN);
+			this.calculator = calculator;
+			this.grade = grade;
+		}
+
+		@Override
+		public double solve (final double average) {
+			// The search writes into the values of the calculator, which the solvers of one copy share
+			synchronized (calculator) {
+				return calculator.calculateGrade(grade, average);
+			}
+		}
+
+		@Override
+		public boolean isLinear () {
+			return false;
+		}
+	}
+
+	/**
+	 * The expression of this calculator
+	 */
+	public final String expression;
+
+	/**
+	 * The root of the parsed expression
+	 */
+	private final Node root;
+
+	/**
+	 * The values of the grades, filled before every evaluation
+	 */
+	private final double[] values;
+
+	/**
+	 * Parses the expression
+	 *
+	 * @param expression The expression to parse
+	 * @throws SyntaxException when the expression is not valid
+	 */
+	public AggregateCalculator (final String expression) {
+		this(expression, new ArrayList<Grade>());
+	}
+
+	private AggregateCalculator (final String expression, final List<Grade> grades) {
+		this(expression, grades, parse(new ExpressionLexer(expression), grades));
+	}
+
+	private AggregateCalculator (final String expression, final List<Grade> grades, final Node root) {
+		super(grades.toArray(new Grade[grades.size()]));
+		this.expression = expression;
+		this.root = root;
+		this.values = new double[grades.size()];
+	}
+
+	/**
+	 * Parses the whole expression
+	 *
+	 * @param lexer  The tokens of the expression
+	 * @param grades The list to add the grades to, in order of appearance
+	 * @return The root of the expression
+	 */
+	private static Node parse (final ExpressionLexer lexer, final List<Grade> grades) {
+		final Node root = parseSum(lexer, grades);
+		expect(lexer, ExpressionLexer.TOKEN_END);
+		return root;
+	}
+
+	/**
+	 * Parses terms separated by '+'. A single term without weighting is returned as it is
+	 */
+	private static Node parseSum (final ExpressionLexer lexer, final List<Grade> grades) {
+		final List<Node> parts = new ArrayList<>();
+		final List<Double> weightings = new ArrayList<>();
+		do {
+			// Weightings can be in front of the factor (2A, 2*A, 2*3*A) and after it (A*2)
+			double weighting = 1D;
+			while (lexer.peek() == ExpressionLexer.TOKEN_NUMBER) {
+				weighting *= parseWeighting(lexer);
+				lexer.isNext(ExpressionLexer.TOKEN_MULTIPLY);
+			}
+			parts.add(parseFactor(lexer, grades));
+			while (lexer.isNext(ExpressionLexer.TOKEN_MULTIPLY))
+				weighting *= parseWeighting(lexer);
+			weightings.add(weighting);
+		} while (lexer.isNext(ExpressionLexer.TOKEN_PLUS));
+
+		if (parts.size() == 1)
+			return parts.get(0);
+		final double[] weightingArray = new double[weightings.size()];
+		for (int i = 0; i < weightingArray.length; i++)
+			weightingArray[i] = weightings.get(i);
+		return new SumNode(parts.toArray(new Node[parts.size()]), weightingArray);
+	}
+
+	/**
+	 * Parses a grade, a function or a sum between brackets with an optional divisor
+	 */
+	private static Node parseFactor (final ExpressionLexer lexer, final List<Grade> grades) {
+		final int index = lexer.pop();
+		switch (lexer.getType(index)) {
+			case ExpressionLexer.TOKEN_IDENTIFIER:
+				if (lexer.isNext(ExpressionLexer.TOKEN_BRACKET_OPEN))
+					return parseFunction(lexer, grades, index);
+				return getGrade(grades, lexer.getText(index));
+			case ExpressionLexer.TOKEN_BRACKET_OPEN:
+				final Node sum = parseSum(lexer, grades);
+				if (!lexer.isNext(ExpressionLexer.TOKEN_BRACKET_CLOSE))
+					throw new SyntaxException(FORMAT_EXPECTED_CHAR, CHAR_BRACKET_CLOSE);
+				// The divisor is only for readability, a sum is the weighted average of its set parts
+				if (lexer.isNext(ExpressionLexer.TOKEN_DIVIDE))
+					parseWeighting(lexer);
+				return sum;
+			case ExpressionLexer.TOKEN_END:
+				throw new SyntaxException(EXCEPTION_NEED_VARIABLE);
+			default:
+				throw new SyntaxException(FORMAT_UNEXPECTED_TOKEN, lexer.getText(index), lexer.getStart(index));
+		}
+	}
+
+	/**
+	 * Parses the arguments of a function, the name and the opening bracket have been read already
+	 */
+	private static Node parseFunction (final ExpressionLexer lexer, final List<Grade> grades, final int nameIndex) {
+		final String name = lexer.getText(nameIndex);
+		final boolean select = FUNCTION_BEST.equals(name) || FUNCTION_DROP.equals(name);
+		if (!select && !FUNCTION_MAX.equals(name) && !FUNCTION_MIN.equals(name) && !FUNCTION_ROUND.equals(name))
+			throw new SyntaxException(FORMAT_UNKNOWN_FUNCTION, name, lexer.getStart(nameIndex));
+
+		int count = 0;
+		if (select) {
+			count = parseCount(lexer);
+			if (!lexer.isNext(ExpressionLexer.TOKEN_COMMA))
+				throw new SyntaxException(FORMAT_EXPECTED_CHAR, CHAR_COMMA);
+		}
+
+		final List<Node> arguments = new ArrayList<>();
+		do {
+			arguments.add(parseSum(lexer, grades));
+		} while (!FUNCTION_ROUND.equals(name) && lexer.isNext(ExpressionLexer.TOKEN_COMMA));
+
+		int decimals = DEFAULT_ROUND_DECIMALS;
+		if (FUNCTION_ROUND.equals(name) && lexer.isNext(ExpressionLexer.TOKEN_COMMA)) {
+			final int index = lexer.getPosition();
+			decimals = parseCount(lexer);
+			if (decimals > MAX_ROUND_DECIMALS)
+				throw new SyntaxException(FORMAT_INVALID_COUNT, lexer.getText(index), lexer.getStart(index));
+		}
+		if (!lexer.isNext(ExpressionLexer.TOKEN_BRACKET_CLOSE))
+			throw new SyntaxException(FORMAT_EXPECTED_CHAR, CHAR_BRACKET_CLOSE);
+
+		final Node[] nodes = arguments.toArray(new Node[arguments.size()]);
+		if (FUNCTION_BEST.equals(name)) {
+			if (count == 0 || count > nodes.length)
+				throw new SyntaxException(FORMAT_INVALID_COUNT, count, lexer.getStart(nameIndex));
+			return new SelectNode(nodes, count, false);
+		} else if (FUNCTION_DROP.equals(name)) {
+			if (count >= nodes.length)
+				throw new SyntaxException(FORMAT_INVALID_COUNT, count, lexer.getStart(nameIndex));
+			return new SelectNode(nodes, count, true);
+		} else if (FUNCTION_ROUND.equals(name)) {
+			return new RoundNode(nodes[0], decimals);
+		}
+		return new ExtremeNode(nodes, FUNCTION_MAX.equals(name));
+	}
+
+	/**
+	 * Parses a whole number which is not negative
+	 */
+	private static int parseCount (final ExpressionLexer lexer) {
+		final int index = lexer.pop();
+		final double count = lexer.getNumber(index);
+		if (lexer.getType(index) != ExpressionLexer.TOKEN_NUMBER || count < 0 || count != (int) count)
+			throw new SyntaxException(FORMAT_INVALID_COUNT, lexer.getText(index), lexer.getStart(index));
+		return (int) count;
+	}
+
+	/**
+	 * Parses a positive number
+	 */
+	private static double parseWeighting (final ExpressionLexer lexer) {
+		final int index = lexer.pop();
+		final double weighting = lexer.getNumber(index);
+		if (lexer.getType(index) != ExpressionLexer.TOKEN_NUMBER || !(weighting > 0D) || Double.isInfinite(weighting))
+			throw new SyntaxException(FORMAT_INVALID_WEIGHTING, lexer.getText(index), lexer.getStart(index));
+		return weighting;
+	}
+
+	/**
+	 * Checks that the current token has the type and moves past it
+	 */
+	private static void expect (final ExpressionLexer lexer, final byte type) {
+		final int index = lexer.getPosition();
+		if (!lexer.isNext(type))
+			throw new SyntaxException(FORMAT_UNEXPECTED_TOKEN, lexer.getText(index), lexer.getStart(index));
+	}
+
+	/**
+	 * Returns the node of the grade with the name, the grade is added when it is used for the first time
+	 */
+	private static Node getGrade (final List<Grade> grades, final String name) {
+		for (int i = 0; i < grades.size(); i++)
+			if (grades.get(i).name.equals(name))
+				return new GradeNode(i);
+		grades.add(new Grade(name, 1));
+		return new GradeNode(grades.size() - 1);
+	}
+
+	/**
+	 * Moves the k highest of the first size values to the front, in linear time on average. This is the selection step of quickselect, with the median of three as pivot.
+	 *
+	 * @param values The values
+	 * @param size   The amount of values to look at
+	 * @param k      The amount of highest values, from 1 to size - 1
+	 */
+	static void selectHighest (final double[] values, final int size, final int k) {
+		int left = 0;
+		int right = size - 1;
+		while (left < right) {
+			// Order the first, middle and last value, the middle one is the pivot
+			final int middle = (left + right) >>> 1;
+			if (values[middle] > values[left])
+				swap(values, middle, left);
+			if (values[right] > values[left])
+				swap(values, right, left);
+			if (values[right] > values[middle])
+				swap(values, right, middle);
+			final double pivot = values[middle];
+
+			// Partition descending: values before i are at least the pivot, values after j are at most the pivot
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (values[i] > pivot)
+					i++;
+				while (values[j] < pivot)
+					j--;
+				if (i <= j)
+					swap(values, i++, j--);
+			}
+
+			// The boundary between the k highest and the rest is at index k
+			if (k <= j + 1) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	private static void swap (final double[] values, final int a, final int b) {
+		final double value = values[a];
+		values[a] = values[b];
+		values[b] = value;
+	}
+
+	/**
+	 * Collects the values of the grades into {@link #values}
+	 */
+	private void collect () {
+		for (int i = 0; i < values.length; i++) {
+			final Grade grade = grades.get(i);
+			values[i] = grade.hasValue() ? grade.getValue() : Double.NaN;
+		}
+	}
+
+	@Override
+	public double calculateAverage () {
+		collect();
+		final double average = root.evaluate(values);
+		return Double.isNaN(average) ? 0.0D : average;
+	}
+
+	/**
+	 * Calculates the lowest value of the grade which gives at least the given average. The average only goes up when the grade goes up, and it is linear in pieces, so this
+	 * searches with regula falsi (with the Illinois step, so it does not get stuck at one side) which is exact on a linear piece. When a step hardly shrinks the range,
+	 * because a function has a kink in it, the next step is a bisection. For instance, with A = 6 the average <code>round((A+B)/2)</code> reaches 6.95 from B = 7.9.
+	 *
+	 * @param gradeToCalculate The grade to calculate the value of
+	 * @param average          The average to achieve
+	 * @return the grade's value, NaN when no value within a million reaches the average, or negative infinity when every value does
+	 * @throws SyntaxException when the grade is not in this calculator
+	 */
+	@Override
+	public double calculateGrade (final Grade gradeToCalculate, final double average) {
+		final int index = gradeToCalculate != null ? grades.indexOf(gradeToCalculate) : -1;
+		if (index == -1)
+			return super.calculateGrade(gradeToCalculate, average);
+		collect();
+
+		// Find a range where the average goes from below to at least the target
+		double low = 0D;
+		double high = SEARCH_START;
+		double step = SEARCH_START;
+		double lowAverage = evaluate(index, low);
+		double highAverage = evaluate(index, high);
+		while (lowAverage >= average) {
+			high = low;
+			highAverage = lowAverage;
+			low -= step;
+			step *= 2;
+			if (low < -SEARCH_LIMIT)
+				return Double.NEGATIVE_INFINITY;
+			lowAverage = evaluate(index, low);
+		}
+		while (highAverage < average) {
+			low = high;
+			lowAverage = highAverage;
+			high += step;
+			step *= 2;
+			if (high > SEARCH_LIMIT)
+				return Double.NaN;
+			highAverage = evaluate(index, high);
+		}
+
+		// Shrink the range, the average at low stays below the target and at high it reaches it
+		int side = 0;
+		boolean bisect = false;
+		for (int i = 0; i < MAX_SEARCH_STEPS && high - low > Math.ulp(high) * 4; i++) {
+			final double width = high - low;
+			double value = bisect ? (low + high) / 2 : low + (average - lowAverage) * (high - low) / (highAverage - lowAverage);
+			if (!(value > low && value < high))
+				value = (low + high) / 2;
+			final double valueAverage = evaluate(index, value);
+			if (valueAverage >= average) {
+				high = value;
+				highAverage = valueAverage;
+				if (side == 1)
+					lowAverage = average - (average - lowAverage) / 2;
+				side = 1;
+			} else {
+				low = value;
+				lowAverage = valueAverage;
+				if (side == -1)
+					highAverage = average + (highAverage - average) / 2;
+				side = -1;
+			}
+			// Near a kink the secant is a bad guess and a step hardly moves the range, then the next step halves it instead
+			bisect = !bisect && high - low > width / 2;
+		}
+
+		// The search ends a few bits next to the answer, like 6.999999999999998 for 7; take the rounded value when it reaches the average as well
+		final double rounded = Math.rint(high * SNAP_SCALE) / SNAP_SCALE;
+		if (rounded > low && Math.abs(rounded - high) <= SNAP_TOLERANCE && evaluate(index, rounded) >= average)
+			return rounded;
+		return high;
+	}
+
+	/**
+	 * Calculates the average when the grade at the index has the value
+	 */
+	private double evaluate (final int index, final double value) {
+		values[index] = value;
+		return root.evaluate(values);
+	}
+
+	/**
+	 * The average of an aggregate formula is not linear in a grade, so the solver is not linear either: it searches like {@link #calculateGrade(Grade, double)}, on a
+	 * copy of the current values
+	 *
+	 * @param gradeToCalculate The grade to calculate the value of
+	 * @return The solver, which is a snapshot of the current values
+	 * @throws SyntaxException when grade is null
+	 */
+	@Override
+	public GradeSolver createSolver (final Grade gradeToCalculate) {
+		final int index = gradeToCalculate != null ? grades.indexOf(gradeToCalculate) : -1;
+		if (index == -1)
+			return super.createSolver(gradeToCalculate);
+		final AggregateCalculator calculator = clone();
+		return new SearchSolver(calculator, calculator.grades.get(index));
+	}
+
+	/**
+	 * Creates the searching solvers of all grades, which share one copy of the current values
+	 *
+	 * @return The solvers, at the same index as the grade
+	 */
+	@Override
+	public GradeSolver[] createSolvers () {
+		final AggregateCalculator calculator = clone();
+		final GradeSolver[] solvers = new GradeSolver[values.length];
+		for (int i = 0; i < solvers.length; i++)
+			solvers[i] = new SearchSolver(calculator, calculator.grades.get(i));
+		return solvers;
+	}
+
+	@Override
+	public AggregateCalculator clone () {
+		final AggregateCalculator calculator = new AggregateCalculator(expression);
+		for (int i = 0; i < values.length; i++) {
+			final Grade grade = grades.get(i);
+			if (grade.hasValue())
+				calculator.grades.get(i).setValue(grade.getValue());
+		}
+		return calculator;
+	}
+}
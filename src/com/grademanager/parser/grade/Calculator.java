@@ -14,7 +14,6 @@ package com.grademanager.parser.grade;
 
 import com.grademanager.parser.SyntaxException;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import static java.util.Arrays.asList;
@@ -46,6 +45,15 @@ public class Calculator implements Cloneable {
 		this.grades = asList(grades);
 	}
 
+	/**
+	 * Creates a new object using the given list of grades directly, for subclasses which need to know when the list changes
+	 *
+	 * @param grades The grades to use
+	 */
+	protected Calculator (final List<Grade> grades) {
+		this.grades = grades;
+	}
+
 	/**
 	 * Calculates the given grade when the average is given. This method will find the {@link com.grademanager.parser.grade.Grade}
 	 * object for you and calls {@link #calculateGrade(com.grademanager.parser.grade.Grade, double)}
@@ -75,28 +83,75 @@ public class Calculator implements Cloneable {
 	 */
 	public double calculateGrade (final Grade gradeToCalculate, double average) {
 		if (gradeToCalculate != null) {
-			// Firstly we want to collect all grades which have a value set, along with their weighting in the average grade
-			final List<Grade> collectedGrades = new ArrayList<>();
-
-			// Loop through all grades, add the grade when it is set to the list of setGrades and add the total weighting
+			// Loop through all set grades except the one to calculate, and collect the total of them (its value multiplied with its weighting) and the total weighting
+			double total = 0.0D;
 			int totalWeighting = gradeToCalculate.weighting;
 			for (final Grade grade : grades) {
 				if (grade.hasValue() && grade != gradeToCalculate) {
 					totalWeighting += grade.weighting;
-					collectedGrades.add(grade);
+					total += grade.getValue() * grade.weighting;
 				}
 			}
 
-			// multiply the average we want, with the total weighting of set numbers
-			average *= totalWeighting;
-			for (final Grade grade : collectedGrades)
-				average -= (grade.getValue() * grade.weighting); // Now we subtract the total value with the total of a set grade (which is its value multiplied with its weighting)
-			return average / gradeToCalculate.weighting;
+			// multiply the average we want with the total weighting, and subtract the total of the set grades
+			return (average * totalWeighting - total) / gradeToCalculate.weighting;
 		}
 		// By dividing the leaving amount by its weighting, we get the value of the grade which it should be to achieve the average
 		throw new SyntaxException(FORMAT_INVALID_GRADE, STRING_UNKNOWN);
 	}
 
+	/**
+	 * Creates a solver which calculates the value of the grade for any average, like {@link #calculateGrade(Grade, double)} does. The other grades are only collected
+	 * once, so this is the way to calculate the grade for many averages.
+	 *
+	 * @param gradeToCalculate The grade to calculate the value of
+	 * @return The solver, which is a snapshot of the current values
+	 * @throws SyntaxException when grade is null
+	 */
+	public GradeSolver createSolver (final Grade gradeToCalculate) {
+		if (gradeToCalculate == null)
+			throw new SyntaxException(FORMAT_INVALID_GRADE, STRING_UNKNOWN);
+
+		double total = 0.0D;
+		long totalWeighting = 0L;
+		for (final Grade grade : grades) {
+			if (grade.hasValue() && grade != gradeToCalculate) {
+				totalWeighting += grade.weighting;
+				total += grade.getValue() * grade.weighting;
+			}
+		}
+		return GradeSolver.create(gradeToCalculate.weighting, total, totalWeighting);
+	}
+
+	/**
+	 * Creates the solvers of all grades in {@link #grades} at once. The set grades are collected once, so this takes the same time as a single {@link
+	 * #createSolver(Grade)}.
+	 *
+	 * @return The solvers, at the same index as the grade
+	 */
+	public GradeSolver[] createSolvers () {
+		double total = 0.0D;
+		long totalWeighting = 0L;
+		for (final Grade grade : grades) {
+			if (grade.hasValue()) {
+				totalWeighting += grade.weighting;
+				total += grade.getValue() * grade.weighting;
+			}
+		}
+
+		// Every grade only has to leave out its own part
+		final GradeSolver[] solvers = new GradeSolver[grades.size()];
+		for (int i = 0; i < solvers.length; i++) {
+			final Grade grade = grades.get(i);
+			if (grade.hasValue()) {
+				solvers[i] = GradeSolver.create(grade.weighting, total - grade.getValue() * grade.weighting, totalWeighting - grade.weighting);
+			} else {
+				solvers[i] = GradeSolver.create(grade.weighting, total, totalWeighting);
+			}
+		}
+		return solvers;
+	}
+
 	/**
 	 * Gets the {@link com.grademanager.parser.grade.Grade} object in {@link #grades} by id
 	 *
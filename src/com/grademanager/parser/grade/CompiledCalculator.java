@@ -0,0 +1,337 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+/**
+ * The compiled form of a {@link com.grademanager.parser.grade.Calculator}. Instead of a list of {@link com.grademanager.parser.grade.Grade} objects, all weightings and values
+ * are stored in parallel primitive arrays, and whether a grade is set is stored in a bitmap. Calculating the average or a grade is then a loop over these arrays which does not
+ * allocate anything.<br/>
+ * The {@link com.grademanager.parser.grade.Grade} objects in {@link #grades} still exist, but they are views on the arrays: setting the value of such a grade sets it in the
+ * arrays, so both can be used at the same time. Do not replace the grades in {@link #grades}, since these are the only views on the arrays.
+ *
+ * @author Wesley A
+ */
+public class CompiledCalculator extends Calculator {
+
+	// Constants which are used within this class only
+	private static final String FORMAT_INVALID_INDEX = "Invalid grade index %d";
+
+	private static final String EXCEPTION_LENGTH_MISMATCH = "Names and weightings must have the same length";
+
+	/**
+	 * A {@link com.grademanager.parser.grade.Grade} which does not hold its own value, but reads and writes it in the arrays of its {@link #owner}. The owner notifies the
+	 * listener of the view whenever the value changes, also when it is changed by index
+	 *
+	 * @author Wesley A
+	 */
+	private static final class GradeView extends Grade {
+
+		/**
+		 * The index of this grade in the arrays
+		 */
+		private final int index;
+
+		/**
+		 * The calculator which holds the arrays, set directly after the calculator is created
+		 */
+		private CompiledCalculator owner;
+
+		/**
+		 * Creates a view for the grade at the given index
+		 *
+		 * @param name      The name of this grade
+		 * @param weighting The weighting of this grade
+		 * @param index     The index of this grade in the arrays
+		 */
+		private GradeView (final String name, final int weighting, final int index) {
+			super(name, weighting);
+			this.index = index;
+		}
+
+		@Override
+		public void setValue (final double grade) {
+			owner.setValue(index, grade);
+		}
+
+		@Override
+		public double getValue () {
+			return owner.values[index];
+		}
+
+		@Override
+		public boolean hasValue () {
+			return owner.hasValue(index);
+		}
+
+		@Override
+		public void reset () {
+			owner.reset(index);
+		}
+	}
+
+	/**
+	 * The weighting of every grade
+	 */
+	final int[] weightings;
+
+	/**
+	 * The value of every grade, only valid when the grade is set in {@link #set}
+	 */
+	final double[] values;
+
+	/**
+	 * A bitmap which tells which grades are set, grade i is bit (i % 64) of word (i / 64)
+	 */
+	final long[] set;
+
+	/**
+	 * Creates a calculator with the given grades, where none of them is set
+	 *
+	 * @param names      The names of the grades
+	 * @param weightings The weightings of the grades, with the same index as the names
+	 * @throws IllegalArgumentException when the arrays do not have the same length
+	 */
+	public CompiledCalculator (final String[] names, final int[] weightings) {
+		this(names, weightings.clone(), new double[weightings.length], new long[(weightings.length + 63) >>> 6]);
+	}
+
+	/**
+	 * Creates a calculator which uses the given arrays directly
+	 *
+	 * @param names      The names of the grades
+	 * @param weightings The weightings of the grades
+	 * @param values     The values of the grades
+	 * @param set        The bitmap of set grades
+	 */
+	private CompiledCalculator (final String[] names, final int[] weightings, final double[] values, final long[] set) {
+		super(createViews(names, weightings));
+		this.weightings = weightings;
+		this.values = values;
+		this.set = set;
+
+		for (final Grade grade : grades)
+			((GradeView) grade).owner = this;
+	}
+
+	/**
+	 * Compiles the given calculator. The current values of its grades are copied, but the calculator itself is not changed and not connected to the compiled one.
+	 *
+	 * @param calculator The calculator to compile
+	 * @return The compiled form of the calculator
+	 */
+	public static CompiledCalculator compile (final Calculator calculator) {
+		final int size = calculator.grades.size();
+		final String[] names = new String[size];
+		final int[] weightings = new int[size];
+		for (int i = 0; i < size; i++) {
+			final Grade grade = calculator.grades.get(i);
+			names[i] = grade.name;
+			weightings[i] = grade.weighting;
+		}
+
+		final CompiledCalculator compiled = new CompiledCalculator(names, weightings);
+		for (int i = 0; i < size; i++) {
+			final Grade grade = calculator.grades.get(i);
+			if (grade.hasValue())
+				compiled.setValue(i, grade.getValue());
+		}
+		return compiled;
+	}
+
+	/**
+	 * Creates the views of the grades
+	 *
+	 * @param names      The names of the grades
+	 * @param weightings The weightings of the grades
+	 * @return The views, the owner is not set yet
+	 */
+	private static Grade[] createViews (final String[] names, final int[] weightings) {
+		if (names.length != weightings.length)
+			throw new IllegalArgumentException(EXCEPTION_LENGTH_MISMATCH);
+
+		final Grade[] views = new Grade[names.length];
+		for (int i = 0; i < views.length; i++)
+			views[i] = new GradeView(names[i], weightings[i], i);
+		return views;
+	}
+
+	/**
+	 * Returns the amount of grades
+	 *
+	 * @return The amount of grades
+	 */
+	public int getSize () {
+		return weightings.length;
+	}
+
+	/**
+	 * Finds the index of the grade with the given name
+	 *
+	 * @param name The name of the grade
+	 * @return The index or -1 when there is no such grade
+	 */
+	public int indexOf (final String name) {
+		if (name != null) {
+			for (int i = 0; i < grades.size(); i++)
+				if (name.equals(grades.get(i).name))
+					return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the weighting of the grade at the index
+	 *
+	 * @param index The index of the grade
+	 * @return The weighting of the grade
+	 */
+	public int getWeighting (final int index) {
+		return weightings[index];
+	}
+
+	/**
+	 * Returns the value of the grade at the index
+	 *
+	 * @param index The index of the grade
+	 * @return The value of the grade, or 0 when it is not set
+	 */
+	public double getValue (final int index) {
+		return hasValue(index) ? values[index] : 0D;
+	}
+
+	/**
+	 * Checks if the grade at the index is set
+	 *
+	 * @param index The index of the grade
+	 * @return Whether the grade has a value
+	 */
+	public boolean hasValue (final int index) {
+		return (set[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets the value of the grade at the index, the listener of the grade gets notified
+	 *
+	 * @param index The index of the grade
+	 * @param value The value to set to
+	 */
+	public void setValue (final int index, final double value) {
+		final boolean wasSet = hasValue(index);
+		final double oldValue = values[index];
+		values[index] = value;
+		set[index >>> 6] |= 1L << index;
+		grades.get(index).notifyChanged(wasSet, oldValue);
+	}
+
+	/**
+	 * Resets the grade at the index (it is not set after calling this), the listener of the grade gets notified when it was set
+	 *
+	 * @param index The index of the grade
+	 */
+	public void reset (final int index) {
+		if (hasValue(index)) {
+			set[index >>> 6] &= ~(1L << index);
+			grades.get(index).notifyChanged(true, values[index]);
+		}
+	}
+
+	@Override
+	public double calculateAverage () {
+		return GradeKernels.average(values, weightings, set);
+	}
+
+	/**
+	 * Calculates the average of all set grades in fixed-point: every value is rounded to hundredths, the weighted sum of those is exact, and only the average itself is
+	 * rounded half up
+	 *
+	 * @return The average in hundredths, or 0 when no grade is set
+	 * @see com.grademanager.parser.grade.FixedPoint
+	 */
+	public long calculateFixedAverage () {
+		long total = 0L;
+		long totalWeighting = 0L;
+		for (int word = 0; word < set.length; word++) {
+			long bits = set[word];
+			while (bits != 0) {
+				final int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				total += (long) FixedPoint.toFixed(values[i]) * weightings[i];
+				totalWeighting += weightings[i];
+			}
+		}
+
+		if (totalWeighting != 0)
+			return FixedPoint.divide(total, totalWeighting);
+		return 0L;
+	}
+
+	/**
+	 * Writes the average as a linear function of the given grades, for when these are set: <pre>average = constant + sum(coefficient * value)</pre> The other grades keep
+	 * their current values.
+	 *
+	 * @param unknowns     The indices of the grades, their current values are ignored
+	 * @param coefficients The array to write the coefficient of every given grade to, with the same index as the unknowns
+	 * @return The constant
+	 */
+	public double linearise (final int[] unknowns, final double[] coefficients) {
+		final boolean[] unknown = new boolean[weightings.length];
+		long totalWeighting = 0L;
+		for (final int index : unknowns) {
+			unknown[index] = true;
+			totalWeighting += weightings[index];
+		}
+
+		double total = 0.0D;
+		for (int i = 0; i < unknown.length; i++) {
+			if (!unknown[i] && hasValue(i)) {
+				total += values[i] * weightings[i];
+				totalWeighting += weightings[i];
+			}
+		}
+
+		for (int i = 0; i < unknowns.length; i++)
+			coefficients[i] = totalWeighting == 0 ? 0.0D : (double) weightings[unknowns[i]] / totalWeighting;
+		return totalWeighting == 0 ? 0.0D : total / totalWeighting;
+	}
+
+	@Override
+	public double calculateGrade (final Grade gradeToCalculate, final double average) {
+		if (gradeToCalculate instanceof GradeView && ((GradeView) gradeToCalculate).owner == this)
+			return calculateGrade(((GradeView) gradeToCalculate).index, average);
+		return super.calculateGrade(gradeToCalculate, average);
+	}
+
+	/**
+	 * Calculates the value of the grade at the index to get the given average. Takes into account for other set grades.
+	 *
+	 * @param index   The index of the grade to calculate the value of
+	 * @param average The average to achieve
+	 * @return the grade's value
+	 * @throws SyntaxException when the index is not valid
+	 */
+	public double calculateGrade (final int index, final double average) {
+		if (index < 0 || index >= weightings.length)
+			throw new SyntaxException(FORMAT_INVALID_INDEX, index);
+		return GradeKernels.requiredValue(values, weightings, set, index, average);
+	}
+
+	@Override
+	public CompiledCalculator clone () {
+		final String[] names = new String[weightings.length];
+		for (int i = 0; i < names.length; i++)
+			names[i] = grades.get(i).name;
+		return new CompiledCalculator(names, weightings, values.clone(), set.clone());
+	}
+}
@@ -0,0 +1,362 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link com.grademanager.parser.grade.Calculator} which can be read and written by many threads at the same time. All values are kept in an immutable {@link Snapshot};
+ * a write copies the current snapshot with the change and publishes it atomically, and a read only has to get the current snapshot. Readers therefore never wait and never
+ * see half of a write, and a {@link Snapshot} can be used to read several values which belong together.<br/>
+ * Like in {@link com.grademanager.parser.grade.CompiledCalculator}, the {@link com.grademanager.parser.grade.Grade} objects in {@link #grades} are views: setting the value
+ * of such a grade writes a new snapshot. Since every write copies the values, this is meant for formulas with a normal amount of grades which are read more often than
+ * written.
+ *
+ * @author Wesley A
+ */
+public class ConcurrentCalculator extends Calculator {
+
+	// Constants which are used within this class only
+	private static final String FORMAT_INVALID_INDEX = "Invalid grade index %d";
+
+	private static final String EXCEPTION_LENGTH_MISMATCH = "Indices and values must have the same length";
+
+	/**
+	 * The immutable state of the calculator at one moment
+	 *
+	 * @author Wesley A
+	 */
+	public static final class Snapshot {
+
+		/**
+		 * The weightings, shared by all snapshots of a calculator
+		 */
+		private final int[] weightings;
+
+		/**
+		 * The values, only valid when they are set in {@link #set}
+		 */
+		private final double[] values;
+
+		/**
+		 * A bitmap which tells which grades are set, grade i is bit (i % 64) of word (i / 64)
+		 */
+		private final long[] set;
+
+		/**
+		 * The sum of value * weighting of all set grades
+		 */
+		private final double total;
+
+		/**
+		 * The sum of the weightings of all set grades
+		 */
+		private final long totalWeighting;
+
+		/**
+		 * The amount of writes before this snapshot
+		 */
+		public final long version;
+
+		/**
+		 * Creates a snapshot and calculates its totals. The arrays are not copied, so they must not be changed anymore
+		 */
+		private Snapshot (final int[] weightings, final double[] values, final long[] set, final long version) {
+			this.weightings = weightings;
+			this.values = values;
+			this.set = set;
+			this.version = version;
+
+			this.total = GradeKernels.weightedSum(values, weightings, set);
+			this.totalWeighting = GradeKernels.totalWeighting(weightings, set);
+		}
+
+		/**
+		 * Checks if the grade at the index is set
+		 *
+		 * @param index The index of the grade
+		 * @return Whether the grade has a value
+		 */
+		public boolean hasValue (final int index) {
+			return (set[index >>> 6] & (1L << index)) != 0;
+		}
+
+		/**
+		 * Returns the value of the grade at the index
+		 *
+		 * @param index The index of the grade
+		 * @return The value of the grade, or 0 when it is not set
+		 */
+		public double getValue (final int index) {
+			return hasValue(index) ? values[index] : 0D;
+		}
+
+		/**
+		 * Calculates the average of all set grades, the totals are already known so this is constant time
+		 *
+		 * @return The average, or 0 when no grade is set
+		 */
+		public double calculateAverage () {
+			if (totalWeighting != 0)
+				return total / totalWeighting;
+			return 0.0D;
+		}
+
+		/**
+		 * Creates a solver for the grade at the index, see {@link Calculator#createSolver(Grade)}
+		 *
+		 * @param index The index of the grade
+		 * @return The solver
+		 */
+		public GradeSolver createSolver (final int index) {
+			if (hasValue(index))
+				return GradeSolver.create(weightings[index], total - values[index] * weightings[index], totalWeighting - weightings[index]);
+			return GradeSolver.create(weightings[index], total, totalWeighting);
+		}
+
+		/**
+		 * Calculates the value of the grade at the index to get the given average
+		 *
+		 * @param index   The index of the grade
+		 * @param average The average to achieve
+		 * @return The value of the grade
+		 */
+		public double calculateGrade (final int index, final double average) {
+			return createSolver(index).solve(average);
+		}
+	}
+
+	/**
+	 * A {@link com.grademanager.parser.grade.Grade} which reads its value from the current snapshot of its {@link #owner}, and writes it with a new snapshot. The owner
+	 * notifies the listener of the view after the snapshot with a change is published
+	 *
+	 * @author Wesley A
+	 */
+	private static final class GradeView extends Grade {
+
+		/**
+		 * The index of this grade in the snapshots
+		 */
+		private final int index;
+
+		/**
+		 * The calculator which holds the snapshots, set directly after the calculator is created
+		 */
+		private ConcurrentCalculator owner;
+
+		private GradeView (final String name, final int weighting, final int index) {
+			super(name, weighting);
+			this.index = index;
+		}
+
+		@Override
+		public void setValue (final double grade) {
+			owner.setValue(index, grade);
+		}
+
+		@Override
+		public double getValue () {
+			return owner.snapshot.get().values[index];
+		}
+
+		@Override
+		public boolean hasValue () {
+			return owner.snapshot.get().hasValue(index);
+		}
+
+		@Override
+		public void reset () {
+			owner.reset(index);
+		}
+	}
+
+	/**
+	 * The weightings of the grades
+	 */
+	private final int[] weightings;
+
+	/**
+	 * The current snapshot
+	 */
+	private final AtomicReference<Snapshot> snapshot;
+
+	/**
+	 * Creates a calculator with the given grades, where none of them is set
+	 *
+	 * @param names      The names of the grades
+	 * @param weightings The weightings of the grades, with the same index as the names
+	 * @throws IllegalArgumentException when the arrays do not have the same length
+	 */
+	public ConcurrentCalculator (final String[] names, final int[] weightings) {
+		this(names, weightings.clone(), null);
+	}
+
+	/**
+	 * Creates a calculator which starts with the snapshot, or with an empty one when it is null
+	 */
+	private ConcurrentCalculator (final String[] names, final int[] weightings, final Snapshot snapshot) {
+		super(createViews(names, weightings));
+		this.weightings = weightings;
+		this.snapshot = new AtomicReference<>(snapshot != null ? snapshot : new Snapshot(weightings, new double[weightings.length],
+				new long[(weightings.length + 63) >>> 6], 0L));
+
+		for (final Grade grade : grades)
+			((GradeView) grade).owner = this;
+	}
+
+	/**
+	 * Creates a concurrent calculator with the grades and current values of the given calculator, which is not changed and not connected to it
+	 *
+	 * @param calculator The calculator to copy
+	 * @return The concurrent calculator
+	 */
+	public static ConcurrentCalculator of (final Calculator calculator) {
+		final int size = calculator.grades.size();
+		final String[] names = new String[size];
+		final int[] weightings = new int[size];
+		final double[] values = new double[size];
+		final long[] set = new long[(size + 63) >>> 6];
+		for (int i = 0; i < size; i++) {
+			final Grade grade = calculator.grades.get(i);
+			names[i] = grade.name;
+			weightings[i] = grade.weighting;
+			if (grade.hasValue()) {
+				values[i] = grade.getValue();
+				set[i >>> 6] |= 1L << i;
+			}
+		}
+		return new ConcurrentCalculator(names, weightings, new Snapshot(weightings, values, set, 0L));
+	}
+
+	/**
+	 * Creates the views of the grades
+	 */
+	private static Grade[] createViews (final String[] names, final int[] weightings) {
+		if (names.length != weightings.length)
+			throw new IllegalArgumentException();
+
+		final Grade[] views = new Grade[names.length];
+		for (int i = 0; i < views.length; i++)
+			views[i] = new GradeView(names[i], weightings[i], i);
+		return views;
+	}
+
+	/**
+	 * Returns the current snapshot, which does not change anymore
+	 *
+	 * @return The snapshot
+	 */
+	public Snapshot getSnapshot () {
+		return snapshot.get();
+	}
+
+	/**
+	 * Sets the value of the grade at the index
+	 *
+	 * @param index The index of the grade
+	 * @param value The value to set to
+	 * @throws SyntaxException when the index is not valid
+	 */
+	public void setValue (final int index, final double value) {
+		update(new int[]{index}, new double[]{value});
+	}
+
+	/**
+	 * Resets the grade at the index (it is not set after calling this)
+	 *
+	 * @param index The index of the grade
+	 * @throws SyntaxException when the index is not valid
+	 */
+	public void reset (final int index) {
+		update(new int[]{index}, new double[]{Double.NaN});
+	}
+
+	/**
+	 * Changes several grades at once, readers either see all changes or none of them. After the changes are published, the listeners of the changed grades are notified on
+	 * this thread with the state before this update, just like {@link Grade#setValue(double)} and {@link Grade#reset()} do
+	 *
+	 * @param indices The indices of the grades
+	 * @param values  The new values, with the same index as the indices; NaN resets the grade
+	 * @return The snapshot with the changes
+	 * @throws SyntaxException when an index is not valid
+	 */
+	public Snapshot update (final int[] indices, final double[] values) {
+		if (indices.length != values.length)
+			throw new IllegalArgumentException(EXCEPTION_LENGTH_MISMATCH);
+		for (final int index : indices)
+			if (index < 0 || index >= weightings.length)
+				throw new SyntaxException(FORMAT_INVALID_INDEX, index);
+
+		// Copy the current snapshot with the changes, and try again when another thread was first
+		while (true) {
+			final Snapshot current = snapshot.get();
+			final double[] newValues = current.values.clone();
+			final long[] newSet = current.set.clone();
+			for (int i = 0; i < indices.length; i++) {
+				final int index = indices[i];
+				if (Double.isNaN(values[i])) {
+					newSet[index >>> 6] &= ~(1L << index);
+				} else {
+					newValues[index] = values[i];
+					newSet[index >>> 6] |= 1L << index;
+				}
+			}
+
+			final Snapshot next = new Snapshot(weightings, newValues, newSet, current.version + 1);
+			if (snapshot.compareAndSet(current, next)) {
+				for (int i = 0; i < indices.length; i++) {
+					final int index = indices[i];
+					if (!Double.isNaN(values[i]) || current.hasValue(index))
+						grades.get(index).notifyChanged(current.hasValue(index), current.values[index]);
+				}
+				return next;
+			}
+		}
+	}
+
+	@Override
+	public double calculateAverage () {
+		return snapshot.get().calculateAverage();
+	}
+
+	@Override
+	public double calculateGrade (final Grade gradeToCalculate, final double average) {
+		return createSolver(gradeToCalculate).solve(average);
+	}
+
+	@Override
+	public GradeSolver createSolver (final Grade gradeToCalculate) {
+		if (gradeToCalculate instanceof GradeView && ((GradeView) gradeToCalculate).owner == this)
+			return snapshot.get().createSolver(((GradeView) gradeToCalculate).index);
+		return super.createSolver(gradeToCalculate);
+	}
+
+	@Override
+	public GradeSolver[] createSolvers () {
+		final Snapshot current = snapshot.get();
+		final GradeSolver[] solvers = new GradeSolver[weightings.length];
+		for (int i = 0; i < solvers.length; i++)
+			solvers[i] = current.createSolver(i);
+		return solvers;
+	}
+
+	@Override
+	public ConcurrentCalculator clone () {
+		final String[] names = new String[weightings.length];
+		for (int i = 0; i < names.length; i++)
+			names[i] = grades.get(i).name;
+		return new ConcurrentCalculator(names, weightings, snapshot.get());
+	}
+}
@@ -12,17 +12,16 @@
 
 package com.grademanager.parser.grade;
 
-import com.grademanager.parser.Parser;
 import com.grademanager.parser.SyntaxException;
 import com.grademanager.parser.Tokenizer;
-import com.grademanager.parser.grade.util.Fraction;
+import com.grademanager.parser.grade.util.Rational;
 
 import java.io.Reader;
-import java.io.StringReader;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static com.grademanager.parser.Constants.CHAR_PLUS;
 import static com.grademanager.parser.Constants.FORMAT_EXPECTED_CHAR;
 
 /**
@@ -30,45 +29,91 @@ import static com.grademanager.parser.Constants.FORMAT_EXPECTED_CHAR;
  * which is the primary goal.<br/>
  * When an expression is given, it always looks like this:
  * <pre>(SE1 + SE2)/2</pre>
- * The names do not have to be the same, nor the denominator. For each variable (i.e. SE1) a {@link com.grademanager.parser.grade.util.Fraction} is calculated. When of all the Fractions of these variables are added
- * all up together, and it is not a total of 1 (the static field {@link #FRACTION_1} it will throw a {@link SyntaxException}
+ * The names do not have to be the same, nor the denominator. For each variable (i.e. SE1) a {@link com.grademanager.parser.grade.util.Rational} is calculated. When of all the Rationals of these variables are added
+ * all up together, and it is not a total of 1 ({@link com.grademanager.parser.grade.util.Rational#ONE}) it will throw a {@link SyntaxException}
  *
  * @author Wesley A
  */
 public class ExpressionCalculator extends Calculator {
 
-	private static final Fraction FRACTION_1 = new Fraction(1, 1);
+	/**
+	 * What {@link #validate(CharSequence)} returns for a valid expression
+	 */
+	public static final int VALID = -1;
 
 	private static final String EXCEPTION_INVALID_EXPRESSION = "This is an invalid average expression!";
 
+	private static final String FORMAT_UNEXPECTED_TOKEN = "Unexpected '%s' at %d";
+
+	private static final String EXCEPTION_WEIGHTING_TOO_LARGE = "The weightings of this expression are too large!";
+
+	private static final char CHAR_DIVIDE = '/';
+
+	private static final BigInteger BIG_INTEGER_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
+	/**
+	 * The validator of every thread, so validating does not create any objects
+	 */
+	private static final ThreadLocal<Validator> VALIDATORS = new ThreadLocal<Validator>() {
+		@Override
+		protected Validator initialValue () {
+			return new Validator();
+		}
+	};
+
+	/**
+	 * The expression which is parsed
+	 */
+	public final String expression;
+
+	/**
+	 * The parsed expression, which is kept to parse edits of the expression
+	 */
+	private final Expression root;
+
 	/**
-	 * This class actually is the parsing part of {@link com.grademanager.parser.grade.ExpressionCalculator}. How this is done, please refer to {@link com.grademanager.parser.grade.ExpressionCalculator}
+	 * This class actually is the parsing part of {@link com.grademanager.parser.grade.ExpressionCalculator}. How this is done, please refer to {@link com.grademanager.parser.grade.ExpressionCalculator}<br/>
+	 * Every expression knows where it is in the input, so when the input is edited only the expression which contains the edit has to be parsed again. The offset is
+	 * relative to the parent expression, so the expressions after the edit only have to move within their parent.
 	 *
 	 * @author Wesley A
 	 * @see com.grademanager.parser.grade.ExpressionCalculator
 	 */
-	private static class Expression extends Parser {
+	private static class Expression {
 
 		// All constants used within this class only
 		private static final char CHAR_BRACKET_CLOSE = ')';
 
-		private static final char CHAR_BRACKET_OPEN = '(';
+		private static final String EXCEPTION_NEED_VARIABLE = "A variable is needed here!";
 
-		private static final char CHAR_MULTIPLY = '*';
+		private static final String EXCEPTION_EXPECTED_NUMBER = "Expected number!";
 
-		private static final char CHAR_SLASH_FORWARD = '/';
+		/**
+		 * The offset of the first token, from the start of the parent expression. For the parent expression itself it is from the start of the input
+		 */
+		private final int start;
 
-		private static final String EXCEPTION_NEED_VARIABLE = "A variable is needed here!";
+		/**
+		 * The amount of characters from the start of the first token to the end of the last token
+		 */
+		private final int length;
 
-		private static final String REGEX_VARIABLE_STARTING = "[a-zA-Z_]";
+		/**
+		 * The number to multiply with divided by the number to divide by, this is {@link com.grademanager.parser.grade.util.Rational#ONE} when neither is given. A number
+		 * which is 0 is ignored. The weighting of a grade is the product of its factor and the factors of all expressions around it.
+		 */
+		private final Rational factor;
 
-		private static final String REGEX_VARIABLE_REST = "\\w";
+		/**
+		 * Whether the weighting of this expression is counted when the weightings are added up. A bracket which is not multiplied or divided keeps the weighting 1
+		 */
+		private final boolean counted;
 
 		/**
-		 * The fraction which goes for a temporary weighting. When all Expression's have the same denominator, this is turned into a {@link com.grademanager.parser.grade.Grade} object<br/>
-		 * This starts as the value of {@link #FRACTION_1}
+		 * Whether this expression is multiplied or divided by a number other than 1. A single grade without brackets, like "A" or "A/1", is only a valid expression when it
+		 * is not scaled: "2A/2" has the weighting 1 as well, but it has never been accepted
 		 */
-		private Fraction weighting = FRACTION_1.clone();
+		private final boolean scaled;
 
 		/**
 		 * The variable, such as SE1
@@ -81,162 +126,626 @@ public class ExpressionCalculator extends Calculator {
 		private final Expression[] subExpressions;
 
 		/**
-		 * Pares an expression with a {@link Tokenizer}. An Expression looks like the following:
+		 * Pares an expression from the tokens of a {@link ExpressionLexer}. An Expression looks like the following:
 		 * <pre>[NUMBER] Expression </pre>
 		 *
-		 * @param tokenizer The tokenizer which letters an expression
-		 */
-		private Expression (final Tokenizer tokenizer) {
-			super(tokenizer); // required for the parent class, Parser
-
-			// First try to parse a number
-			Double multiplier = parseNumber(false);
-			boolean usedAsterisk = false;
-			if (multiplier != null) {
-				final Object[] multiplyObject = parseMultipliers();
-				if ((Boolean) multiplyObject[0])
-					multiplier *= (Double) multiplyObject[1];
-				usedAsterisk = (Boolean) multiplyObject[2];
+		 * @param lexer       The lexer which holds the tokens of the expression, positioned at the start of this expression
+		 * @param parentStart The offset of the parent expression in the input of the lexer
+		 */
+		private Expression (final ExpressionLexer lexer, final int parentStart) {
+			final int absoluteStart = lexer.getStart(lexer.getPosition());
+			this.start = absoluteStart - parentStart;
+
+			// First try to parse a number, a '*' which is not followed by a number is allowed before the variable or bracket
+			double multiplier = 1D;
+			boolean hasMultiplier = lexer.peek() == ExpressionLexer.TOKEN_NUMBER;
+			if (hasMultiplier) {
+				multiplier = lexer.getNumber(lexer.pop());
+				multiplier *= parseMultipliers(lexer, true);
 			}
 
 			final List<Expression> expressions = new ArrayList<>();
-			if (tokenizer.isNext(CHAR_BRACKET_OPEN)) {
+			if (lexer.isNext(ExpressionLexer.TOKEN_BRACKET_OPEN)) {
 				do {
-					expressions.add(new Expression(tokenizer));
-				} while (tokenizer.isNext(CHAR_PLUS));
-				if (!tokenizer.isNext(CHAR_BRACKET_CLOSE))
+					expressions.add(new Expression(lexer, absoluteStart));
+				} while (lexer.isNext(ExpressionLexer.TOKEN_PLUS));
+				if (!lexer.isNext(ExpressionLexer.TOKEN_BRACKET_CLOSE))
 					throw new SyntaxException(FORMAT_EXPECTED_CHAR, CHAR_BRACKET_CLOSE);
 			}
 
 			if (expressions.size() == 0) {
-				if (usedAsterisk)
-					tokenizer.skipBlanks();
-
-				final StringBuilder builder = new StringBuilder();
-				Character character = tokenizer.peek();
-				if (character != null && character.toString().matches(REGEX_VARIABLE_STARTING)) {
-					builder.append(tokenizer.pop());
-					while ((character = tokenizer.peek()) != null && character.toString().matches(REGEX_VARIABLE_REST))
-						builder.append(tokenizer.pop());
-				}
-
-				if (builder.length() == 0)
+				if (lexer.peek() != ExpressionLexer.TOKEN_IDENTIFIER)
 					throw new SyntaxException(EXCEPTION_NEED_VARIABLE);
-				this.variable = builder.toString();
+				this.variable = lexer.getText(lexer.pop());
 			} else {
 				this.variable = null;
 			}
 
 			// Try to parse multipliers again
-			final Object[] multiplyObject = parseMultipliers();
-			if (((Boolean) multiplyObject[0])) {
-				if (multiplier != null) {
-					multiplier *= (Double) multiplyObject[1];
-				} else {
-					multiplier = (Double) multiplyObject[1];
-				}
+			if (lexer.peek() == ExpressionLexer.TOKEN_MULTIPLY) {
+				hasMultiplier = true;
+				multiplier *= parseMultipliers(lexer, false);
 			}
 
-			if ((Boolean) multiplyObject[2])
-				throw new SyntaxException("Expected number!");
-
 			// Set the found expressions in a proper immutable list (arrays are mutable)
 			this.subExpressions = (expressions.size() == 0 ? new Expression[0] : expressions.toArray(new Expression[expressions.size()]));
 
-			// multiply all sub expressions with the multiplier, if available
-			if (multiplier != null)
-				multiply(multiplier.intValue());
+			// Multiply with the multiplier, if available
+			Rational factor = Rational.ONE;
+			boolean counted = subExpressions.length == 0;
+			boolean scaled = false;
+			if (hasMultiplier && (int) multiplier != 0) {
+				factor = factor.multiply((int) multiplier);
+				counted = true;
+				scaled = (int) multiplier != 1;
+			}
 
-			// Check for a division, also divide all the sub expressions with that number
-			if (tokenizer.isNext(CHAR_SLASH_FORWARD)) {// divide char
-				final Double divider = parseNumber(false);
-				if (divider != null)
-					divide(divider.intValue());
+			// Check for a division
+			if (lexer.isNext(ExpressionLexer.TOKEN_DIVIDE)) {
+				if (lexer.peek() == ExpressionLexer.TOKEN_NUMBER) {
+					final int n = (int) lexer.getNumber(lexer.pop());
+					if (n != 0) {
+						factor = factor.divide(n);
+						counted = true;
+						scaled |= n != 1;
+					}
+				}
 			}
+			this.factor = factor;
+			this.counted = counted;
+			this.scaled = scaled;
+			this.length = lexer.getEnd(lexer.getPosition() - 1) - absoluteStart;
+		}
+
+		/**
+		 * Copies the expression, with other sub expressions
+		 *
+		 * @param expression     The expression to copy
+		 * @param start          The offset from the start of the parent expression
+		 * @param length         The amount of characters
+		 * @param subExpressions The sub expressions
+		 */
+		private Expression (final Expression expression, final int start, final int length, final Expression[] subExpressions) {
+			this.start = start;
+			this.length = length;
+			this.factor = expression.factor;
+			this.counted = expression.counted;
+			this.scaled = expression.scaled;
+			this.variable = expression.variable;
+			this.subExpressions = subExpressions;
 		}
 
 		/**
-		 * Parses a number which to multiply with
+		 * Parses the numbers to multiply with, which look like <pre>*NUMBER*NUMBER</pre>
 		 *
-		 * @return An array containing the following information (index-1):
-		 * <ol>
-		 * <li>Boolean: whether to use the next index</li>
-		 * <li>Double: the parsed number, defaults to 1D</li>
-		 * <li>Boolean: whether a number couldn't be parsed</li>
-		 * </ol>
-		 */
-		private Object[] parseMultipliers () {
-			Double number = 1D;
-			boolean changed = false;
-			while (tokenizer.isNext(CHAR_MULTIPLY)) {
-				final Double multiplyNumber = parseNumber(false);
-				if (multiplyNumber != null) {
-					number *= multiplyNumber;
+		 * @param lexer          The lexer to parse from
+		 * @param allowLastEmpty Whether the last '*' may be without a number, it is then followed by the variable or bracket
+		 * @return The product of the numbers, or 1 when there are none
+		 * @throws SyntaxException when a '*' is not followed by a number and that is not allowed
+		 */
+		private static double parseMultipliers (final ExpressionLexer lexer, final boolean allowLastEmpty) {
+			double number = 1D;
+			while (lexer.isNext(ExpressionLexer.TOKEN_MULTIPLY)) {
+				if (lexer.peek() == ExpressionLexer.TOKEN_NUMBER) {
+					number *= lexer.getNumber(lexer.pop());
+				} else if (allowLastEmpty) {
+					break;
 				} else {
-					return new Object[]{ changed, number, true };
+					throw new SyntaxException(EXCEPTION_EXPECTED_NUMBER);
 				}
+			}
+			return number;
+		}
 
-				if (!changed)
-					changed = true;
+		/**
+		 * Copies this expression where one sub expression is replaced, which has changed in length. The sub expressions after it move with that change.
+		 *
+		 * @param index      The index of the sub expression
+		 * @param expression The new sub expression
+		 * @param delta      The change in length
+		 * @return The copy
+		 */
+		private Expression replace (final int index, final Expression expression, final int delta) {
+			final Expression[] subExpressions = this.subExpressions.clone();
+			subExpressions[index] = expression;
+			for (int i = index + 1; i < subExpressions.length; i++) {
+				final Expression sub = subExpressions[i];
+				subExpressions[i] = new Expression(sub, sub.start + delta, sub.length, sub.subExpressions);
 			}
-			return new Object[]{ changed, number, false };
+			return new Expression(this, start, length + delta, subExpressions);
 		}
 
 		/**
-		 * Divides all sub-expressions
+		 * Collects the grades and their weighting
 		 *
-		 * @param n The value to divide with
-		 */
-		private void divide (final int n) {
-			if (n != 0) {
-				if (subExpressions.length != 0) {
-					for (final Expression expression : subExpressions)
-						expression.divide(n); // The sub expression can contain sub expressions too, so call the method instead of direct division like in the else clause
-					countFractions();
-				} else {
-					weighting.divide(n);
+		 * @param parentFactor     The product of the factors of the expressions around this one
+		 * @param gradeExpressions The list to add the expressions which represent a grade to
+		 * @param weightings       The list to add the weighting of those to
+		 * @return The total weighting of this expression
+		 */
+		private Rational collect (final Rational parentFactor, final List<Expression> gradeExpressions, final List<Rational> weightings) {
+			final Rational weighting = parentFactor.multiply(factor);
+			if (subExpressions.length == 0) {
+				gradeExpressions.add(this);
+				weightings.add(weighting);
+				return weighting;
+			}
+
+			Rational total = Rational.ZERO;
+			for (final Expression expression : subExpressions)
+				total = total.add(expression.collect(weighting, gradeExpressions, weightings));
+			return total;
+		}
+	}
+
+	/**
+	 * The result of {@link #reparse(CharSequence)}: the new calculator and how its grades differ from the grades of the old one. The grades which did not change are the
+	 * same objects in both calculators, so their values are kept.
+	 *
+	 * @author Wesley A
+	 */
+	public static final class Diff {
+
+		/**
+		 * The calculator of the edited expression
+		 */
+		public final ExpressionCalculator calculator;
+
+		/**
+		 * The grades which are new, in the order of the new calculator
+		 */
+		public final List<Grade> added;
+
+		/**
+		 * The grades of the old calculator which are gone
+		 */
+		public final List<Grade> removed;
+
+		/**
+		 * The grades of which only the weighting changed, these are the grades of the new calculator and have the value of the old grade
+		 */
+		public final List<Grade> reweighted;
+
+		private Diff (final ExpressionCalculator calculator, final List<Grade> added, final List<Grade> removed, final List<Grade> reweighted) {
+			this.calculator = calculator;
+			this.added = Collections.unmodifiableList(added);
+			this.removed = Collections.unmodifiableList(removed);
+			this.reweighted = Collections.unmodifiableList(reweighted);
+		}
+
+		/**
+		 * Checks if the grades are the same
+		 *
+		 * @return Whether no grade is added, removed or reweighted
+		 */
+		public boolean isEmpty () {
+			return added.isEmpty() && removed.isEmpty() && reweighted.isEmpty();
+		}
+	}
+
+	/**
+	 * Checks an expression exactly like {@link com.grademanager.parser.grade.ExpressionCalculator.Expression} parses it, but without creating any objects. The tokens are
+	 * read one at a time straight from the input, like {@link ExpressionLexer} splits them, and the weighting of every grade is kept as a fraction of two longs in arrays
+	 * which are reused for the next expression.
+	 *
+	 * @author Wesley A
+	 * @see #validate(CharSequence)
+	 */
+	private static final class Validator {
+
+		// All constants used within this class only
+		private static final int KIND_ERROR = -1;
+
+		private static final int KIND_COUNTED = 0;
+
+		private static final int KIND_UNCOUNTED = 1;
+
+		private static final int OVERFLOW = -2;
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		private CharSequence input;
+
+		private int length;
+
+		/**
+		 * The offset after the current token
+		 */
+		private int offset;
+
+		/**
+		 * The type, start and value of the current token
+		 */
+		private byte type;
+
+		private int start;
+
+		private double number;
+
+		/**
+		 * The offset of the first error
+		 */
+		private int error;
+
+		/**
+		 * Whether a weighting did not fit in longs
+		 */
+		private boolean overflow;
+
+		/**
+		 * Whether the parent expression is a single grade which is scaled, see {@link com.grademanager.parser.grade.ExpressionCalculator.Expression#scaled}
+		 */
+		private boolean scaledGrade;
+
+		/**
+		 * The weighting of every grade so far, always in the smallest form with a positive denominator
+		 */
+		private long[] numerators = new long[INITIAL_CAPACITY];
+
+		private long[] denominators = new long[INITIAL_CAPACITY];
+
+		private int grades;
+
+		/**
+		 * The fraction {@link #add(long, long)} adds to
+		 */
+		private long sumNumerator;
+
+		private long sumDenominator;
+
+		/**
+		 * Validates the expression
+		 *
+		 * @param input The expression
+		 * @return {@link #VALID}, {@link #OVERFLOW} or the offset of the error
+		 */
+		int validate (final CharSequence input) {
+			this.input = input;
+			length = input.length();
+			offset = 0;
+			error = VALID;
+			overflow = false;
+			scaledGrade = false;
+			grades = 0;
+			// A sign at the start belongs to a number, just like after a '+'
+			type = ExpressionLexer.TOKEN_PLUS;
+			try {
+				if (!next())
+					return error;
+				final int kind = parse(true);
+				if (kind == KIND_ERROR)
+					return error;
+				if (type != ExpressionLexer.TOKEN_END)
+					return start;
+				if (scaledGrade)
+					return length;
+
+				// The total is what getGrades adds up, for a parent bracket of which the weighting is not counted that is in the sum already
+				if (kind == KIND_COUNTED)
+					sumGrades(0);
+				if (overflow)
+					return OVERFLOW;
+				if (sumNumerator != 1L || sumDenominator != 1L)
+					return length;
+
+				// Every weighting has to fit in an int when all grades have the common denominator. The sum of the weightings is then that denominator, so when it
+				// does not fit in a long there is a weighting which does not fit in an int
+				long denominator = 1L;
+				for (int i = 0; i < grades; i++) {
+					denominator = multiply(denominator / Rational.gcd(denominator, denominators[i]), denominators[i]);
+					if (overflow)
+						return length;
+				}
+				for (int i = 0; i < grades; i++) {
+					final long numerator = Math.abs(numerators[i]);
+					final long factor = denominator / denominators[i];
+					if (numerator > Integer.MAX_VALUE || (numerator != 0 && factor > Integer.MAX_VALUE) || numerator * factor > Integer.MAX_VALUE)
+						return length;
+				}
+				return VALID;
+			} finally {
+				this.input = null;
+			}
+		}
+
+		/**
+		 * Parses an expression, see {@link com.grademanager.parser.grade.ExpressionCalculator.Expression#Expression(ExpressionLexer, int)}
+		 *
+		 * @param top Whether this is the parent expression, of which the sub expressions are added to the sum like getGrades does
+		 * @return Whether the weighting of the expression is counted, or {@link #KIND_ERROR}
+		 */
+		private int parse (final boolean top) {
+			double multiplier = 1D;
+			boolean hasMultiplier = type == ExpressionLexer.TOKEN_NUMBER;
+			if (hasMultiplier) {
+				multiplier = number;
+				if (!next())
+					return KIND_ERROR;
+				while (type == ExpressionLexer.TOKEN_MULTIPLY) {
+					if (!next())
+						return KIND_ERROR;
+					if (type != ExpressionLexer.TOKEN_NUMBER)
+						break;
+					multiplier *= number;
+					if (!next())
+						return KIND_ERROR;
+				}
+			}
+
+			final int first = grades;
+			final boolean isBracket = type == ExpressionLexer.TOKEN_BRACKET_OPEN;
+			if (isBracket) {
+				if (!next())
+					return KIND_ERROR;
+				long totalNumerator = 0L;
+				long totalDenominator = 1L;
+				while (true) {
+					final int child = grades;
+					final int kind = parse(false);
+					if (kind == KIND_ERROR)
+						return KIND_ERROR;
+					if (top) {
+						// A sub expression of which the weighting is not counted still has the weighting 1
+						if (kind == KIND_COUNTED) {
+							sumGrades(child);
+						} else {
+							sumNumerator = 1L;
+							sumDenominator = 1L;
+						}
+						add(totalNumerator, totalDenominator);
+						totalNumerator = sumNumerator;
+						totalDenominator = sumDenominator;
+					}
+					if (type != ExpressionLexer.TOKEN_PLUS)
+						break;
+					if (!next())
+						return KIND_ERROR;
+				}
+				if (type != ExpressionLexer.TOKEN_BRACKET_CLOSE)
+					return fail(start);
+				if (!next())
+					return KIND_ERROR;
+				sumNumerator = totalNumerator;
+				sumDenominator = totalDenominator;
+			} else if (type == ExpressionLexer.TOKEN_IDENTIFIER) {
+				addGrade();
+				if (!next())
+					return KIND_ERROR;
+			} else {
+				return fail(start);
+			}
+
+			if (type == ExpressionLexer.TOKEN_MULTIPLY) {
+				hasMultiplier = true;
+				do {
+					if (!next())
+						return KIND_ERROR;
+					if (type != ExpressionLexer.TOKEN_NUMBER)
+						return fail(start);
+					multiplier *= number;
+					if (!next())
+						return KIND_ERROR;
+				} while (type == ExpressionLexer.TOKEN_MULTIPLY);
+			}
+
+			// Like multiply and divide, a factor of 0 is ignored and the weighting of a bracket is only counted when it is scaled
+			boolean counted = !isBracket;
+			boolean scaled = false;
+			if (hasMultiplier && (int) multiplier != 0) {
+				scale(first, (int) multiplier, 1L);
+				counted = true;
+				scaled = (int) multiplier != 1;
+			}
+			if (type == ExpressionLexer.TOKEN_DIVIDE) {
+				if (!next())
+					return KIND_ERROR;
+				if (type == ExpressionLexer.TOKEN_NUMBER) {
+					final int divisor = (int) number;
+					if (!next())
+						return KIND_ERROR;
+					if (divisor != 0) {
+						scale(first, 1L, divisor);
+						counted = true;
+						scaled |= divisor != 1;
+					}
 				}
 			}
+			if (top && !isBracket)
+				scaledGrade = scaled;
+			return counted ? KIND_COUNTED : KIND_UNCOUNTED;
 		}
 
 		/**
-		 * Multiplies all sub-expressions
+		 * Reads the next token, see {@link ExpressionLexer#ExpressionLexer(CharSequence)}
 		 *
-		 * @param n The value to multiply with
-		 */
-		private void multiply (final int n) {
-			if (n != 0) {
-				if (subExpressions.length != 0) {
-					for (final Expression expression : subExpressions)
-						expression.multiply(n); // The sub expression can contain sub expressions too, so call the method instead of direct multiplication like in the else clause
-					countFractions();
+		 * @return Whether it is a valid token
+		 */
+		private boolean next () {
+			while (offset < length && ExpressionLexer.classOf(input.charAt(offset)) == ExpressionLexer.CLASS_BLANK)
+				offset++;
+			start = offset;
+			if (offset == length) {
+				type = ExpressionLexer.TOKEN_END;
+				return true;
+			}
+
+			final char character = input.charAt(offset);
+			switch (ExpressionLexer.classOf(character)) {
+				case ExpressionLexer.CLASS_DIGIT:
+				case ExpressionLexer.CLASS_DOT:
+					return nextNumber(offset);
+				case ExpressionLexer.CLASS_LETTER:
+					byte characterClass;
+					do {
+						offset++;
+					} while (offset < length && ((characterClass = ExpressionLexer.classOf(input.charAt(offset))) == ExpressionLexer.CLASS_LETTER ||
+					                             characterClass == ExpressionLexer.CLASS_DIGIT));
+					type = ExpressionLexer.TOKEN_IDENTIFIER;
+					return true;
+				case ExpressionLexer.CLASS_SIGN:
+					if (isValueExpected() && offset + 1 < length) {
+						final byte nextClass = ExpressionLexer.classOf(input.charAt(offset + 1));
+						if (nextClass == ExpressionLexer.CLASS_DIGIT || nextClass == ExpressionLexer.CLASS_DOT)
+							return nextNumber(offset + 1);
+					}
+					if (character == ExpressionLexer.CHAR_SUBTRACT)
+						break;
+					return nextSingle(ExpressionLexer.TOKEN_PLUS);
+				case ExpressionLexer.CLASS_BRACKET_OPEN:
+					return nextSingle(ExpressionLexer.TOKEN_BRACKET_OPEN);
+				case ExpressionLexer.CLASS_BRACKET_CLOSE:
+					return nextSingle(ExpressionLexer.TOKEN_BRACKET_CLOSE);
+				case ExpressionLexer.CLASS_MULTIPLY:
+					return nextSingle(ExpressionLexer.TOKEN_MULTIPLY);
+				case ExpressionLexer.CLASS_DIVIDE:
+					return nextSingle(ExpressionLexer.TOKEN_DIVIDE);
+				case ExpressionLexer.CLASS_COMMA:
+					return nextSingle(ExpressionLexer.TOKEN_COMMA);
+			}
+			fail(offset);
+			return false;
+		}
+
+		private boolean nextSingle (final byte type) {
+			this.type = type;
+			offset++;
+			return true;
+		}
+
+		/**
+		 * Checks if the previous token is one after which a value can follow
+		 */
+		private boolean isValueExpected () {
+			return type == ExpressionLexer.TOKEN_BRACKET_OPEN || type == ExpressionLexer.TOKEN_PLUS || type == ExpressionLexer.TOKEN_MULTIPLY ||
+			       type == ExpressionLexer.TOKEN_DIVIDE || type == ExpressionLexer.TOKEN_COMMA;
+		}
+
+		/**
+		 * Reads a number which starts at {@link #start}
+		 *
+		 * @param i The offset of the first digit or dot
+		 * @return Whether it is a valid number
+		 */
+		private boolean nextNumber (int i) {
+			long mantissa = 0L;
+			int digits = 0;
+			int fractionDigits = 0;
+			boolean parsedDot = false;
+
+			byte characterClass;
+			while (i < length && ((characterClass = ExpressionLexer.classOf(input.charAt(i))) == ExpressionLexer.CLASS_DIGIT || characterClass == ExpressionLexer.CLASS_DOT)) {
+				if (characterClass == ExpressionLexer.CLASS_DOT) {
+					if (parsedDot) {
+						fail(i);
+						return false;
+					}
+					parsedDot = true;
 				} else {
-					weighting.multiply(n);
+					if (digits < ExpressionLexer.MAX_EXACT_DIGITS)
+						mantissa = mantissa * 10L + (input.charAt(i) - '0');
+					digits++;
+					if (parsedDot)
+						fractionDigits++;
+				}
+				i++;
+			}
+
+			if (digits == 0) {
+				fail(start);
+				return false;
+			}
+			number = ExpressionLexer.toNumber(input, start, i, mantissa, digits, fractionDigits);
+			type = ExpressionLexer.TOKEN_NUMBER;
+			offset = i;
+			return true;
+		}
+
+		private int fail (final int at) {
+			error = at;
+			return KIND_ERROR;
+		}
+
+		/**
+		 * Adds a grade with the weighting 1, the arrays grow when they are full
+		 */
+		private void addGrade () {
+			if (grades == numerators.length) {
+				final long[] newNumerators = new long[grades * 2];
+				final long[] newDenominators = new long[grades * 2];
+				System.arraycopy(numerators, 0, newNumerators, 0, grades);
+				System.arraycopy(denominators, 0, newDenominators, 0, grades);
+				numerators = newNumerators;
+				denominators = newDenominators;
+			}
+			numerators[grades] = 1L;
+			denominators[grades] = 1L;
+			grades++;
+		}
+
+		/**
+		 * Multiplies the weightings of the grades from the given index up to the last one with numerator/denominator
+		 */
+		private void scale (final int first, final long numerator, final long denominator) {
+			for (int i = first; i < grades; i++) {
+				long newNumerator = multiply(numerators[i], numerator);
+				long newDenominator = multiply(denominators[i], denominator);
+				if (overflow)
+					return;
+				if (newDenominator < 0) {
+					newNumerator = -newNumerator;
+					newDenominator = -newDenominator;
 				}
+				final long gcd = Rational.gcd(Math.abs(newNumerator), newDenominator);
+				numerators[i] = newNumerator / gcd;
+				denominators[i] = newDenominator / gcd;
 			}
 		}
 
 		/**
-		 * Counts all fractions of sub-expressions if they are present.
+		 * Sets the sum to the total weighting of the grades from the given index up to the last one
+		 */
+		private void sumGrades (final int first) {
+			sumNumerator = 0L;
+			sumDenominator = 1L;
+			for (int i = first; i < grades; i++)
+				add(numerators[i], denominators[i]);
+		}
+
+		/**
+		 * Adds the fraction to the sum
+		 */
+		private void add (final long numerator, final long denominator) {
+			final long gcd = Rational.gcd(sumDenominator, denominator);
+			final long newDenominator = multiply(sumDenominator / gcd, denominator);
+			final long newNumerator = multiply(sumNumerator, denominator / gcd) + multiply(numerator, sumDenominator / gcd);
+			if (overflow)
+				return;
+			final long reduce = Rational.gcd(Math.abs(newNumerator), newDenominator);
+			sumNumerator = newNumerator / reduce;
+			sumDenominator = newDenominator / reduce;
+		}
+
+		/**
+		 * Multiplies two longs, when the product does not fit in half a long {@link #overflow} is set so the sums can not overflow either
 		 */
-		private void countFractions () {
-			if (subExpressions.length != 0) {
-				final Fraction start = subExpressions[0].weighting.clone();
-				for (int i = 1; i < subExpressions.length; i++)
-					start.add(subExpressions[i].weighting);
-				weighting = start.makeSmallest();
+		private long multiply (final long a, final long b) {
+			final long result = a * b;
+			if (Math.abs(a) > Integer.MAX_VALUE || Math.abs(b) > Integer.MAX_VALUE) {
+				if ((b != 0 && result / b != a) || a == Long.MIN_VALUE || b == Long.MIN_VALUE || Math.abs(result) > Long.MAX_VALUE >> 1)
+					overflow = true;
 			}
+			return result;
 		}
 	}
 
 	/**
 	 * Creates a new instance of ExpressionCalculator and parses the expression.<br/>
-	 * This constructor is short for <pre>new ExpressionCalculator(new StringReader(expression));</pre>
+	 * This constructor is short for <pre>new ExpressionCalculator(new ExpressionLexer(expression));</pre>
 	 *
 	 * @param expression The string to parse
 	 */
 	public ExpressionCalculator (final String expression) {
-		this(new StringReader(expression));
+		this(new ExpressionLexer(expression));
 	}
 
 	/**
@@ -250,51 +759,255 @@ public class ExpressionCalculator extends Calculator {
 	}
 
 	/**
-	 * Parses an expression, and only calls {@link #getGrades(Tokenizer)} which does the parsing. It is some sort of wrapper.
+	 * Creates a new instance of ExpressionCalculator and parses the expression. All remaining characters of the tokenizer are read, these must be one expression.
 	 *
 	 * @param tokenizer The tokenizer which is the input of characters
 	 */
 	public ExpressionCalculator (final Tokenizer tokenizer) {
-		super(getGrades(tokenizer));
+		this(new ExpressionLexer(readRemaining(tokenizer)));
+	}
+
+	/**
+	 * Parses an expression, and only calls {@link #parse(ExpressionLexer)} which does the parsing. It is some sort of wrapper.
+	 *
+	 * @param lexer The lexer which holds the tokens of the expression
+	 */
+	public ExpressionCalculator (final ExpressionLexer lexer) {
+		this(lexer.input.toString(), parse(lexer));
+	}
+
+	private ExpressionCalculator (final String expression, final Expression root) {
+		this(expression, root, getGrades(root));
+	}
+
+	private ExpressionCalculator (final String expression, final Expression root, final Grade[] grades) {
+		super(grades);
+		this.expression = expression;
+		this.root = root;
+	}
+
+	/**
+	 * Checks if the expression is valid, without creating the grades. This checks the same as parsing the expression does: the syntax, that the weightings add up to 1
+	 * and that every weighting fits in an int. Nothing is allocated, so this can be called every time the expression changes.
+	 *
+	 * @param expression The expression to check
+	 * @return {@link #VALID}, or the offset in the expression where it is not valid. That is the length of the expression when only the weightings are not valid
+	 */
+	public static int validate (final CharSequence expression) {
+		final int result = VALIDATORS.get().validate(expression);
+		if (result != Validator.OVERFLOW)
+			return result;
+
+		// The weightings do not fit in longs, which only happens with absurd numbers. The parser uses BigIntegers for that
+		try {
+			new ExpressionCalculator(new ExpressionLexer(expression));
+			return VALID;
+		} catch (final SyntaxException e) {
+			return expression.length();
+		}
+	}
+
+	/**
+	 * Reads all remaining characters of the tokenizer
+	 *
+	 * @param tokenizer The tokenizer to read
+	 * @return The characters
+	 */
+	private static String readRemaining (final Tokenizer tokenizer) {
+		final StringBuilder builder = new StringBuilder();
+		Character character;
+		while ((character = tokenizer.pop()) != null)
+			builder.append(character.charValue());
+		return builder.toString();
+	}
+
+	/**
+	 * Parses the next expression in the lexer, which must be all remaining tokens
+	 *
+	 * @param lexer The {@link ExpressionLexer} which holds the tokens of an expression
+	 * @return The parsed expression
+	 * @throws SyntaxException When the expression is not followed by the end of the input
+	 */
+	private static Expression parse (final ExpressionLexer lexer) {
+		final Expression parentExpression = new Expression(lexer, 0);
+		if (lexer.peek() != ExpressionLexer.TOKEN_END) {
+			final int index = lexer.getPosition();
+			throw new SyntaxException(FORMAT_UNEXPECTED_TOKEN, lexer.getText(index), lexer.getStart(index));
+		}
+		return parentExpression;
+	}
+
+	/**
+	 * Parses the edited expression again, by only parsing the smallest sub expression which contains the edit. The part of the expression which differs is found by
+	 * comparing it with the current expression from both ends.
+	 *
+	 * @param expression The edited expression
+	 * @return The new calculator and the grades which changed
+	 * @throws SyntaxException when the edited expression is not valid
+	 */
+	public Diff reparse (final CharSequence expression) {
+		final int length = Math.min(this.expression.length(), expression.length());
+		int start = 0;
+		while (start < length && this.expression.charAt(start) == expression.charAt(start))
+			start++;
+
+		int oldEnd = this.expression.length();
+		int newEnd = expression.length();
+		while (oldEnd > start && newEnd > start && this.expression.charAt(oldEnd - 1) == expression.charAt(newEnd - 1)) {
+			oldEnd--;
+			newEnd--;
+		}
+		return reparse(expression, start, oldEnd, newEnd);
+	}
+
+	/**
+	 * Parses the edited expression again, by only parsing the smallest sub expression which contains the edit. When that is not possible, for example because the edit
+	 * adds a term to a bracket, the expression around it is tried, up to the whole expression.
+	 *
+	 * @param expression The edited expression
+	 * @param start      The offset of the edit
+	 * @param oldEnd     The offset after the edit in the current expression
+	 * @param newEnd     The offset after the edit in the edited expression
+	 * @return The new calculator and the grades which changed
+	 * @throws SyntaxException when the edited expression is not valid
+	 */
+	public Diff reparse (final CharSequence expression, final int start, final int oldEnd, final int newEnd) {
+		Expression root = reparse(this.root, 0, expression, start, oldEnd, newEnd - oldEnd);
+		if (root == null)
+			root = parse(new ExpressionLexer(expression));
+		final Grade[] grades = getGrades(root);
+
+		// Match the grades in order by name, a grade which did not change keeps its object
+		final List<Grade> added = new ArrayList<>();
+		final List<Grade> removed = new ArrayList<>();
+		final List<Grade> reweighted = new ArrayList<>();
+		int next = 0;
+		for (int i = 0; i < grades.length; i++) {
+			int match = next;
+			while (match < this.grades.size() && !this.grades.get(match).name.equals(grades[i].name))
+				match++;
+			if (match == this.grades.size()) {
+				added.add(grades[i]);
+				continue;
+			}
+
+			removed.addAll(this.grades.subList(next, match));
+			next = match + 1;
+			final Grade grade = this.grades.get(match);
+			if (grade.weighting == grades[i].weighting) {
+				grades[i] = grade;
+			} else {
+				if (grade.hasValue())
+					grades[i].setValue(grade.getValue());
+				reweighted.add(grades[i]);
+			}
+		}
+		removed.addAll(this.grades.subList(next, this.grades.size()));
+		return new Diff(new ExpressionCalculator(expression.toString(), root, grades), added, removed, reweighted);
+	}
+
+	/**
+	 * Parses the deepest sub expression which contains the edit again
+	 *
+	 * @param expression  The current expression
+	 * @param parentStart The offset of its parent expression in the input
+	 * @param input       The edited input
+	 * @param start       The offset of the edit
+	 * @param oldEnd      The offset after the edit in the current input
+	 * @param delta       The change in length of the input
+	 * @return The new expression, or null when it has to be parsed as part of the expression around it
+	 */
+	private Expression reparse (final Expression expression, final int parentStart, final CharSequence input, final int start, final int oldEnd, final int delta) {
+		final int expressionStart = parentStart + expression.start;
+		final int expressionEnd = expressionStart + expression.length;
+		if (start < expressionStart || oldEnd > expressionEnd)
+			return null;
+
+		for (int i = 0; i < expression.subExpressions.length; i++) {
+			final Expression sub = expression.subExpressions[i];
+			final int subStart = expressionStart + sub.start;
+			if (start >= subStart && oldEnd <= subStart + sub.length) {
+				// After a '/' the '+' in front of the sub expression is part of a number when a digit follows it, so then the previous one has to be parsed too
+				if (i > 0 && endsWithDivide(expression.subExpressions[i - 1], expressionStart))
+					break;
+				final Expression replacement = reparse(sub, expressionStart, input, start, oldEnd, delta);
+				if (replacement != null)
+					return expression.replace(i, replacement, delta);
+				break;
+			}
+		}
+
+		// A '/' at the end makes a sign after it part of a number, so the tokens after the expression depend on it
+		if (endsWithDivide(expression, parentStart))
+			return null;
+		try {
+			final ExpressionLexer lexer = new ExpressionLexer(input.subSequence(expressionStart, expressionEnd + delta));
+			final Expression replacement = new Expression(lexer, parentStart - expressionStart);
+			if (lexer.peek() != ExpressionLexer.TOKEN_END || lexer.getType(lexer.getPosition() - 1) == ExpressionLexer.TOKEN_DIVIDE)
+				return null;
+			return replacement;
+		} catch (final SyntaxException e) {
+			return null;
+		}
 	}
 
 	/**
-	 * Collects the grades of a given expression
+	 * Checks if the last token of the expression is a '/' without a number, which changes how a sign after it is read
 	 *
-	 * @param tokenizer The {@link Tokenizer} which letters an expression
+	 * @param expression  The expression
+	 * @param parentStart The offset of its parent expression in {@link #expression}
+	 * @return Whether the expression ends with a '/'
+	 */
+	private boolean endsWithDivide (final Expression expression, final int parentStart) {
+		return this.expression.charAt(parentStart + expression.start + expression.length - 1) == CHAR_DIVIDE;
+	}
+
+	/**
+	 * Collects the grades of a parsed expression
+	 *
+	 * @param parentExpression The parsed expression
 	 * @return The grades associated with the expression
-	 * @throws SyntaxException When the total weighting is not 1
+	 * @throws SyntaxException When the total weighting is not 1, or when a weighting does not fit in an int
 	 */
-	private static Grade[] getGrades (final Tokenizer tokenizer) {
-		final Expression parentExpression = new Expression(tokenizer);
-		parentExpression.countFractions();
-
-		// If the parentExpression is not the Fraction 1/1, then the expression is not valid for an average
-		if (parentExpression.weighting.equals(FRACTION_1)) {
-			final List<Expression> gradeExpressions = findGradeExpressions(new Expression[]{ parentExpression }); // find all expressions which have a variable
-			final List<Integer> denominators = new ArrayList<>();
-
-			// collect the denominators of Expression.weighting
-			for (final Expression grade : gradeExpressions) {
-				if (!denominators.contains(grade.weighting.getDenominator()))
-					denominators.add(grade.weighting.getDenominator());
+	private static Grade[] getGrades (final Expression parentExpression) {
+		if (parentExpression.subExpressions.length == 0 && parentExpression.scaled)
+			throw new SyntaxException(EXCEPTION_INVALID_EXPRESSION);
+
+		final List<Expression> gradeExpressions = new ArrayList<>();
+		final List<Rational> weightings = new ArrayList<>();
+		Rational total;
+		if (parentExpression.counted) {
+			total = parentExpression.collect(Rational.ONE, gradeExpressions, weightings);
+		} else {
+			// A bracket which is not multiplied or divided is not counted, so only its sub expressions are added up. Those which are not counted have the weighting 1
+			total = Rational.ZERO;
+			for (final Expression expression : parentExpression.subExpressions) {
+				final Rational weighting = expression.collect(Rational.ONE, gradeExpressions, weightings);
+				total = total.add(expression.counted ? weighting : Rational.ONE);
 			}
+		}
 
-			// Create an empty array of Grade objects
+		// If the total is not the Rational 1/1, then the expression is not valid for an average
+		if (total.equals(Rational.ONE)) {
+			// All grade objects must have the same denominator, the smallest one is the least common multiple of all denominators
 			final Grade[] grades = new Grade[gradeExpressions.size()];
+			long denominator = 1L;
+			for (final Rational weighting : weightings) {
+				// Both are at most an int, so the product always fits in a long
+				if (!weighting.isLong() || denominator > Integer.MAX_VALUE || weighting.getDenominator() > Integer.MAX_VALUE)
+					return getGradesExact(gradeExpressions, weightings);
+				final long gradeDenominator = weighting.getDenominator();
+				denominator = denominator / Rational.gcd(denominator, gradeDenominator) * gradeDenominator;
+			}
 
-			// Fill the grades array
-			for (final Expression gradeExpression : gradeExpressions) {
-				// Multiply the denominator of this Grade with all other denominators except it's own (all grade objects must have the same denominator)
-				final int denominator_backup = gradeExpression.weighting.getDenominator();
-				for (final Integer denominator : denominators) {
-					if (denominator != denominator_backup) {
-						gradeExpression.weighting.multiply(denominator);
-						gradeExpression.weighting.divide(denominator);
-					}
-				}
-				// Create the Grade object for the given expression
-				grades[gradeExpressions.indexOf(gradeExpression)] = new Grade(gradeExpression.variable, gradeExpression.weighting.getNumerator());
+			// Create the Grade objects, the weighting is the numerator when the fraction has the common denominator
+			for (int i = 0; i < grades.length; i++) {
+				final Rational weighting = weightings.get(i);
+				final long numerator = weighting.getNumerator();
+				final long factor = denominator / weighting.getDenominator();
+				if (Math.abs(numerator) > Integer.MAX_VALUE || (numerator != 0 && factor > Integer.MAX_VALUE) || Math.abs(numerator) * factor > Integer.MAX_VALUE)
+					throw new SyntaxException(EXCEPTION_WEIGHTING_TOO_LARGE);
+				grades[i] = new Grade(gradeExpressions.get(i).variable, (int) (numerator * factor));
 			}
 			return grades;
 		}
@@ -303,21 +1016,30 @@ public class ExpressionCalculator extends Calculator {
 	}
 
 	/**
-	 * Finds all the expressions which represent a grade ({@link com.grademanager.parser.grade.ExpressionCalculator.Expression#variable} is not null)
+	 * Does the same as the last part of {@link #getGrades(Expression)}, but with {@link java.math.BigInteger} objects. This is only used when the denominators are too
+	 * large for longs, which in practice means the expression is not valid anyway.
 	 *
-	 * @param subs The list to look through, used for recursion
-	 * @return An array with expressions which represent a grade
+	 * @param gradeExpressions The expressions which represent a grade
+	 * @param weightings       The weighting of those expressions
+	 * @return The grades
+	 * @throws SyntaxException when a weighting does not fit in an int
 	 */
-	private static List<Expression> findGradeExpressions (final Expression[] subs) {
-		final List<Expression> gradeExpressions = new ArrayList<>();
-		for (final Expression expression : subs) {
-			if (expression.subExpressions.length == 0) {
-				gradeExpressions.add(expression);
-			} else {
-				gradeExpressions.addAll(findGradeExpressions(expression.subExpressions));
-			}
+	private static Grade[] getGradesExact (final List<Expression> gradeExpressions, final List<Rational> weightings) {
+		BigInteger denominator = BigInteger.ONE;
+		for (final Rational weighting : weightings) {
+			final BigInteger gradeDenominator = weighting.getBigDenominator();
+			denominator = denominator.divide(denominator.gcd(gradeDenominator)).multiply(gradeDenominator);
+		}
+
+		final Grade[] grades = new Grade[gradeExpressions.size()];
+		for (int i = 0; i < grades.length; i++) {
+			final Rational gradeWeighting = weightings.get(i);
+			final BigInteger weighting = gradeWeighting.getBigNumerator().multiply(denominator.divide(gradeWeighting.getBigDenominator()));
+			if (weighting.abs().compareTo(BIG_INTEGER_MAX) > 0)
+				throw new SyntaxException(EXCEPTION_WEIGHTING_TOO_LARGE);
+			grades[i] = new Grade(gradeExpressions.get(i).variable, weighting.intValue());
 		}
-		return gradeExpressions;
+		return grades;
 	}
 
 }
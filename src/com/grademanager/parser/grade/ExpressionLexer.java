@@ -0,0 +1,458 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+/**
+ * Splits an expression (see {@link com.grademanager.parser.grade.ExpressionCalculator}) into tokens. The class of every character is looked up in a static table, so no
+ * objects are created per character. The tokens are stored in parallel arrays: the type, the start and end offset in the input and the value when it is a number. An
+ * identifier is only turned into a {@link String} when {@link #getText(int)} is called.<br/>
+ * Like the {@link com.grademanager.parser.Tokenizer}, this has a position with {@link #peek()}, {@link #pop()} and {@link #isNext(byte)}, but it works on whole tokens.
+ * Blanks are skipped by the lexer and never end up in a token.
+ *
+ * @author Wesley A
+ */
+public final class ExpressionLexer {
+
+	/**
+	 * A number, such as 2 or 0.5. A '+' or '-' sign is part of the number when it is in front of a value
+	 */
+	public static final byte TOKEN_NUMBER = 0;
+
+	/**
+	 * A variable, such as SE1
+	 */
+	public static final byte TOKEN_IDENTIFIER = 1;
+
+	/**
+	 * '('
+	 */
+	public static final byte TOKEN_BRACKET_OPEN = 2;
+
+	/**
+	 * ')'
+	 */
+	public static final byte TOKEN_BRACKET_CLOSE = 3;
+
+	/**
+	 * '+'
+	 */
+	public static final byte TOKEN_PLUS = 4;
+
+	/**
+	 * '*'
+	 */
+	public static final byte TOKEN_MULTIPLY = 5;
+
+	/**
+	 * '/'
+	 */
+	public static final byte TOKEN_DIVIDE = 6;
+
+	/**
+	 * The end of the input, this is always the last token
+	 */
+	public static final byte TOKEN_END = 7;
+
+	/**
+	 * ',', which separates the arguments of a function
+	 */
+	public static final byte TOKEN_COMMA = 8;
+
+	// The classes of characters, which are also used by the validation of ExpressionCalculator
+	static final byte CLASS_INVALID = 0;
+
+	static final byte CLASS_BLANK = 1;
+
+	static final byte CLASS_DIGIT = 2;
+
+	static final byte CLASS_LETTER = 3;
+
+	static final byte CLASS_DOT = 4;
+
+	static final byte CLASS_SIGN = 5;
+
+	static final byte CLASS_BRACKET_OPEN = 6;
+
+	static final byte CLASS_BRACKET_CLOSE = 7;
+
+	static final byte CLASS_MULTIPLY = 8;
+
+	static final byte CLASS_DIVIDE = 9;
+
+	static final byte CLASS_COMMA = 10;
+
+	static final char CHAR_SUBTRACT = '-';
+
+	/**
+	 * The amount of digits which are collected in the mantissa of a number, more digits do not fit exactly in a double
+	 */
+	static final int MAX_EXACT_DIGITS = 15;
+
+	// Constants which are used within this class only
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static final String EXCEPTION_EXPECTED_NUMBER = "Expected number!";
+
+	private static final String EXCEPTION_MULTIPLE_DOTS = "Multiple dots have been found";
+
+	private static final String FORMAT_UNEXPECTED_CHAR = "Unexpected '%s' at %d";
+
+	/**
+	 * The class of every ASCII character, other characters are blank or invalid
+	 */
+	private static final byte[] CHAR_CLASSES = new byte[128];
+
+	/**
+	 * The powers of ten which can be represented exactly as a double
+	 */
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		for (char c = 0; c < CHAR_CLASSES.length; c++) {
+			if (Character.isWhitespace(c))
+				CHAR_CLASSES[c] = CLASS_BLANK;
+		}
+		for (char c = '0'; c <= '9'; c++)
+			CHAR_CLASSES[c] = CLASS_DIGIT;
+		for (char c = 'a'; c <= 'z'; c++)
+			CHAR_CLASSES[c] = CLASS_LETTER;
+		for (char c = 'A'; c <= 'Z'; c++)
+			CHAR_CLASSES[c] = CLASS_LETTER;
+		CHAR_CLASSES['_'] = CLASS_LETTER;
+		CHAR_CLASSES['.'] = CLASS_DOT;
+		CHAR_CLASSES['+'] = CLASS_SIGN;
+		CHAR_CLASSES['-'] = CLASS_SIGN;
+		CHAR_CLASSES['('] = CLASS_BRACKET_OPEN;
+		CHAR_CLASSES[')'] = CLASS_BRACKET_CLOSE;
+		CHAR_CLASSES['*'] = CLASS_MULTIPLY;
+		CHAR_CLASSES['/'] = CLASS_DIVIDE;
+		CHAR_CLASSES[','] = CLASS_COMMA;
+
+		POWERS_OF_TEN[0] = 1D;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10D;
+	}
+
+	/**
+	 * The expression which is split into tokens
+	 */
+	public final CharSequence input;
+
+	/**
+	 * The type of every token
+	 */
+	private byte[] types = new byte[INITIAL_CAPACITY];
+
+	/**
+	 * The offset of the first character of every token
+	 */
+	private int[] starts = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The offset after the last character of every token
+	 */
+	private int[] ends = new int[INITIAL_CAPACITY];
+
+	/**
+	 * The value of every token which is a number
+	 */
+	private double[] numbers = new double[INITIAL_CAPACITY];
+
+	/**
+	 * The amount of tokens
+	 */
+	private int size = 0;
+
+	/**
+	 * The index of the current token
+	 */
+	private int position = 0;
+
+	/**
+	 * Splits the input into tokens
+	 *
+	 * @param input The expression
+	 * @throws SyntaxException when the input contains a character which is not part of an expression
+	 */
+	public ExpressionLexer (final CharSequence input) {
+		this.input = input;
+
+		final int length = input.length();
+		int i = 0;
+		while (i < length) {
+			final char character = input.charAt(i);
+			switch (classOf(character)) {
+				case CLASS_BLANK:
+					i++;
+					break;
+				case CLASS_DIGIT:
+				case CLASS_DOT:
+					i = lexNumber(i, i);
+					break;
+				case CLASS_LETTER:
+					final int start = i;
+					byte characterClass;
+					do {
+						i++;
+					} while (i < length && ((characterClass = classOf(input.charAt(i))) == CLASS_LETTER || characterClass == CLASS_DIGIT));
+					add(TOKEN_IDENTIFIER, start, i, 0D);
+					break;
+				case CLASS_SIGN:
+					// A sign directly in front of a number, where a value is expected, belongs to that number. Otherwise only '+' is valid, as operator
+					if (isValueExpected() && i + 1 < length && (classOf(input.charAt(i + 1)) == CLASS_DIGIT || classOf(input.charAt(i + 1)) == CLASS_DOT)) {
+						i = lexNumber(i, i + 1);
+					} else if (character != CHAR_SUBTRACT) {
+						add(TOKEN_PLUS, i, ++i, 0D);
+					} else {
+						throw new SyntaxException(FORMAT_UNEXPECTED_CHAR, character, i);
+					}
+					break;
+				case CLASS_BRACKET_OPEN:
+					add(TOKEN_BRACKET_OPEN, i, ++i, 0D);
+					break;
+				case CLASS_BRACKET_CLOSE:
+					add(TOKEN_BRACKET_CLOSE, i, ++i, 0D);
+					break;
+				case CLASS_MULTIPLY:
+					add(TOKEN_MULTIPLY, i, ++i, 0D);
+					break;
+				case CLASS_DIVIDE:
+					add(TOKEN_DIVIDE, i, ++i, 0D);
+					break;
+				case CLASS_COMMA:
+					add(TOKEN_COMMA, i, ++i, 0D);
+					break;
+				default:
+					throw new SyntaxException(FORMAT_UNEXPECTED_CHAR, character, i);
+			}
+		}
+		add(TOKEN_END, length, length, 0D);
+	}
+
+	/**
+	 * Looks up the class of the character
+	 *
+	 * @param character The character
+	 * @return One of the CLASS_ constants
+	 */
+	static byte classOf (final char character) {
+		if (character < CHAR_CLASSES.length)
+			return CHAR_CLASSES[character];
+		return Character.isWhitespace(character) ? CLASS_BLANK : CLASS_INVALID;
+	}
+
+	/**
+	 * Checks if the previous token is one after which a value can follow
+	 *
+	 * @return Whether a sign could start a number here
+	 */
+	private boolean isValueExpected () {
+		if (size == 0)
+			return true;
+		final byte previous = types[size - 1];
+		return previous == TOKEN_BRACKET_OPEN || previous == TOKEN_PLUS || previous == TOKEN_MULTIPLY || previous == TOKEN_DIVIDE || previous == TOKEN_COMMA;
+	}
+
+	/**
+	 * Reads a number and adds it as token. The digits are collected in a long, so no string has to be created for the common, short numbers.
+	 *
+	 * @param start The offset of the number, including the sign
+	 * @param i     The offset of the first digit or dot
+	 * @return The offset after the number
+	 * @throws SyntaxException when the number has no digits or multiple dots
+	 */
+	private int lexNumber (final int start, int i) {
+		final int length = input.length();
+		long mantissa = 0L;
+		int digits = 0;
+		int fractionDigits = 0;
+		boolean parsedDot = false;
+
+		byte characterClass;
+		while (i < length && ((characterClass = classOf(input.charAt(i))) == CLASS_DIGIT || characterClass == CLASS_DOT)) {
+			if (characterClass == CLASS_DOT) {
+				if (parsedDot)
+					throw new SyntaxException(EXCEPTION_MULTIPLE_DOTS);
+				parsedDot = true;
+			} else {
+				if (digits < MAX_EXACT_DIGITS)
+					mantissa = mantissa * 10L + (input.charAt(i) - '0');
+				digits++;
+				if (parsedDot)
+					fractionDigits++;
+			}
+			i++;
+		}
+
+		if (digits == 0)
+			throw new SyntaxException(EXCEPTION_EXPECTED_NUMBER);
+
+		add(TOKEN_NUMBER, start, i, toNumber(input, start, i, mantissa, digits, fractionDigits));
+		return i;
+	}
+
+	/**
+	 * Calculates the value of a number in the input, of which the digits are already collected
+	 *
+	 * @param input          The input
+	 * @param start          The offset of the number, including the sign
+	 * @param end            The offset after the number
+	 * @param mantissa       The first {@link #MAX_EXACT_DIGITS} digits
+	 * @param digits         The amount of digits
+	 * @param fractionDigits The amount of digits after the dot
+	 * @return The value, where -0 is 0
+	 */
+	static double toNumber (final CharSequence input, final int start, final int end, final long mantissa, final int digits, final int fractionDigits) {
+		double value;
+		if (digits <= MAX_EXACT_DIGITS) {
+			// Both the mantissa and the power of ten are exact doubles, so the division is correctly rounded just like Double.parseDouble
+			value = mantissa / POWERS_OF_TEN[fractionDigits];
+		} else {
+			value = Double.parseDouble(input.subSequence(start, end).toString());
+		}
+		if (input.charAt(start) == CHAR_SUBTRACT)
+			value = -value;
+		return Math.abs(value) == 0D ? 0D : value;
+	}
+
+	/**
+	 * Adds a token, the arrays grow when they are full
+	 */
+	private void add (final byte type, final int start, final int end, final double number) {
+		if (size == types.length) {
+			final int capacity = size * 2;
+			final byte[] newTypes = new byte[capacity];
+			final int[] newStarts = new int[capacity];
+			final int[] newEnds = new int[capacity];
+			final double[] newNumbers = new double[capacity];
+			System.arraycopy(types, 0, newTypes, 0, size);
+			System.arraycopy(starts, 0, newStarts, 0, size);
+			System.arraycopy(ends, 0, newEnds, 0, size);
+			System.arraycopy(numbers, 0, newNumbers, 0, size);
+			types = newTypes;
+			starts = newStarts;
+			ends = newEnds;
+			numbers = newNumbers;
+		}
+		types[size] = type;
+		starts[size] = start;
+		ends[size] = end;
+		numbers[size] = number;
+		size++;
+	}
+
+	/**
+	 * Returns the amount of tokens, including the {@link #TOKEN_END} token
+	 *
+	 * @return The amount of tokens
+	 */
+	public int getSize () {
+		return size;
+	}
+
+	/**
+	 * Returns the type of the token
+	 *
+	 * @param index The index of the token
+	 * @return One of the TOKEN_ constants
+	 */
+	public byte getType (final int index) {
+		return types[index];
+	}
+
+	/**
+	 * Returns the offset of the first character of the token
+	 *
+	 * @param index The index of the token
+	 * @return The start offset in {@link #input}
+	 */
+	public int getStart (final int index) {
+		return starts[index];
+	}
+
+	/**
+	 * Returns the offset after the last character of the token
+	 *
+	 * @param index The index of the token
+	 * @return The end offset in {@link #input}
+	 */
+	public int getEnd (final int index) {
+		return ends[index];
+	}
+
+	/**
+	 * Returns the value of a {@link #TOKEN_NUMBER} token
+	 *
+	 * @param index The index of the token
+	 * @return The value of the number, or 0 when the token is not a number
+	 */
+	public double getNumber (final int index) {
+		return numbers[index];
+	}
+
+	/**
+	 * Returns the characters of the token as a {@link String}
+	 *
+	 * @param index The index of the token
+	 * @return The text of the token
+	 */
+	public String getText (final int index) {
+		return input.subSequence(starts[index], ends[index]).toString();
+	}
+
+	/**
+	 * Returns the index of the current token
+	 *
+	 * @return The position
+	 */
+	public int getPosition () {
+		return position;
+	}
+
+	/**
+	 * Looks at the type of the current token without moving the position
+	 *
+	 * @return The type of the current token
+	 */
+	public byte peek () {
+		return types[position];
+	}
+
+	/**
+	 * Moves the position to the next token. The position never moves past the {@link #TOKEN_END} token
+	 *
+	 * @return The index of the current token
+	 */
+	public int pop () {
+		final int index = position;
+		if (position < size - 1)
+			position++;
+		return index;
+	}
+
+	/**
+	 * When the current token has the given type, it will {@link #pop()} and return true
+	 *
+	 * @param type The type to match
+	 * @return Whether the current token has the given type
+	 */
+	public boolean isNext (final byte type) {
+		if (types[position] == type) {
+			pop();
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point arithmetic for grades. Grades have at most two decimals, so as a whole amount of hundredths they are exact, and a weighted sum of them in a long is exact
+ * too. The average is then only rounded once, with a division which rounds half up.<br/>
+ * The formatter rounds half up to the given amount of decimals, like <code>new BigDecimal(String.valueOf(value)).setScale(decimals, BigDecimal.ROUND_HALF_UP)</code>, but
+ * writes the digits into a given {@link java.lang.StringBuilder} so nothing is allocated.
+ *
+ * @author Wesley A
+ */
+public final class FixedPoint {
+
+	/**
+	 * The amount of fixed-point units in 1
+	 */
+	public static final int SCALE = 100;
+
+	/**
+	 * The amount of decimals of a fixed-point value
+	 */
+	public static final int DECIMALS = 2;
+
+	// Constants which are used within this class only
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L,
+			1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L};
+
+	/**
+	 * A value which is halfway in decimal (like 6.35) is not always halfway in binary (6.35 * 10 is 63.49999...), values this close to halfway are rounded up
+	 */
+	private static final double HALF_TOLERANCE = 1E-9;
+
+	/**
+	 * Scaled values from this on do not fit in a long anymore, or have no fraction left
+	 */
+	private static final double MAX_SCALED = 1E15;
+
+	private static final String FORMAT_INVALID_DECIMALS = "Invalid amount of decimals %d";
+
+	private static final char CHAR_MINUS = '-';
+
+	private static final char CHAR_POINT = '.';
+
+	private static final char CHAR_ZERO = '0';
+
+	private FixedPoint () {}
+
+	/**
+	 * Converts the value to hundredths, rounded half up
+	 *
+	 * @param value The value to convert
+	 * @return The value in hundredths
+	 * @throws ArithmeticException when the value does not fit in an int
+	 */
+	public static int toFixed (final double value) {
+		final long fixed = round(value, DECIMALS);
+		if (fixed != (int) fixed)
+			throw new ArithmeticException();
+		return (int) fixed;
+	}
+
+	/**
+	 * Converts hundredths back to a value
+	 *
+	 * @param fixed The value in hundredths
+	 * @return The value
+	 */
+	public static double toDouble (final long fixed) {
+		return (double) fixed / SCALE;
+	}
+
+	/**
+	 * Divides and rounds half up, which is how the weighted average of fixed-point values is taken: divide the sum of value * weighting by the total weighting
+	 *
+	 * @param total     The dividend
+	 * @param weighting The divisor, which must be positive
+	 * @return The rounded quotient
+	 */
+	public static long divide (final long total, final long weighting) {
+		final long quotient = total / weighting;
+		final long remainder = Math.abs(total % weighting);
+		// Half up rounds away from zero, 2 * remainder >= weighting without the overflow of 2 * remainder
+		if (remainder >= weighting - remainder)
+			return total < 0 ? quotient - 1 : quotient + 1;
+		return quotient;
+	}
+
+	/**
+	 * Rounds the value half up to the amount of decimals, and returns it as a whole number in units of that amount of decimals
+	 *
+	 * @param value    The value to round
+	 * @param decimals The amount of decimals, from 0 to 15
+	 * @return The rounded value multiplied by 10 to the power of decimals
+	 * @throws ArithmeticException when the value is not finite or does not fit
+	 */
+	public static long round (final double value, final int decimals) {
+		checkDecimals(decimals);
+		final double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+		if (!(scaled < MAX_SCALED))
+			throw new ArithmeticException();
+
+		long rounded = (long) scaled;
+		if (scaled - rounded >= 0.5D - HALF_TOLERANCE)
+			rounded++;
+		return value < 0 ? -rounded : rounded;
+	}
+
+	/**
+	 * Appends the value rounded half up to the amount of decimals, like "7.5" for 7.45 and 1 decimal. Values which are too large to round in a long are appended with
+	 * {@link java.math.BigDecimal}, NaN and infinity are appended as they are.
+	 *
+	 * @param builder  The builder to append to
+	 * @param value    The value to append
+	 * @param decimals The amount of decimals, from 0 to 15
+	 * @return The builder
+	 */
+	public static StringBuilder append (final StringBuilder builder, final double value, final int decimals) {
+		checkDecimals(decimals);
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return builder.append(value);
+		if (!(Math.abs(value) * POWERS_OF_TEN[decimals] < MAX_SCALED))
+			return builder.append(new BigDecimal(String.valueOf(value)).setScale(decimals, BigDecimal.ROUND_HALF_UP).toPlainString());
+		return appendScaled(builder, round(value, decimals), decimals);
+	}
+
+	/**
+	 * Appends a fixed-point value rounded half up to the amount of decimals
+	 *
+	 * @param builder  The builder to append to
+	 * @param fixed    The value in hundredths
+	 * @param decimals The amount of decimals, from 0 to 15
+	 * @return The builder
+	 */
+	public static StringBuilder appendFixed (final StringBuilder builder, final long fixed, final int decimals) {
+		checkDecimals(decimals);
+		if (decimals >= DECIMALS)
+			return appendScaled(builder, fixed * POWERS_OF_TEN[decimals - DECIMALS], decimals);
+		return appendScaled(builder, divide(fixed, POWERS_OF_TEN[DECIMALS - decimals]), decimals);
+	}
+
+	/**
+	 * Formats the value rounded half up to the amount of decimals
+	 *
+	 * @param value    The value to format
+	 * @param decimals The amount of decimals, from 0 to 15
+	 * @return The formatted value
+	 */
+	public static String format (final double value, final int decimals) {
+		return append(new StringBuilder(), value, decimals).toString();
+	}
+
+	/**
+	 * Appends a whole number in units of the amount of decimals, with a point before the decimals
+	 *
+	 * @param builder  The builder to append to
+	 * @param scaled   The number
+	 * @param decimals The amount of decimals
+	 * @return The builder
+	 */
+	private static StringBuilder appendScaled (final StringBuilder builder, final long scaled, final int decimals) {
+		// A value which rounds to zero has no sign, like BigDecimal
+		if (scaled < 0)
+			builder.append(CHAR_MINUS);
+		final long absolute = Math.abs(scaled);
+		final long power = POWERS_OF_TEN[decimals];
+		builder.append(absolute / power);
+		if (decimals > 0) {
+			builder.append(CHAR_POINT);
+			final long fraction = absolute % power;
+			// Leading zeros of the fraction
+			for (long digit = power / 10; digit > 1 && fraction < digit; digit /= 10)
+				builder.append(CHAR_ZERO);
+			builder.append(fraction);
+		}
+		return builder;
+	}
+
+	/**
+	 * Checks the amount of decimals
+	 *
+	 * @param decimals The amount of decimals
+	 * @throws IllegalArgumentException when it is not from 0 to 15
+	 */
+	private static void checkDecimals (final int decimals) {
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+			throw new IllegalArgumentException(String.format(FORMAT_INVALID_DECIMALS, decimals));
+	}
+}
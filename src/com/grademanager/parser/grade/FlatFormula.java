@@ -0,0 +1,321 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tree of {@link com.grademanager.parser.grade.Calculator} objects, where a grade can be a calculator of its own, flattened into arrays. Every leaf grade has the index of
+ * its group (the calculator which contains it), and every group has the index of its parent group. The groups are numbered in pre-order, so a group always has a higher index
+ * than its parent and the root group has index 0.<br/>
+ * The average is then calculated in one pass over the leaves and one pass over the groups, instead of calculating the average of every group recursively. The rules stay
+ * the same: a group only counts for its parent when at least one of its grades is set, and then with the average of its set grades. When all grades are set, the average is
+ * simply the sum of every leaf value multiplied with its coefficient ({@link #getCoefficient(int)}).<br/>
+ * The leaves are the actual {@link com.grademanager.parser.grade.Grade} objects of the tree, so a value which is set on a grade is used directly. When the structure of the
+ * tree changes, the formula has to be flattened again.
+ *
+ * @author Wesley A
+ */
+public final class FlatFormula {
+
+	/**
+	 * Tells the compiler which grades are a calculator of their own
+	 *
+	 * @author Wesley A
+	 */
+	public static interface Resolver {
+
+		/**
+		 * Returns the calculator of the grade
+		 *
+		 * @param grade The grade to check
+		 * @return The calculator with the sub-grades of this grade, or null when this grade is a leaf
+		 */
+		Calculator getCalculator (Grade grade);
+	}
+
+	/**
+	 * The leaf grades, in the order they appear in the tree
+	 */
+	final Grade[] leaves;
+
+	/**
+	 * The weighting of every leaf within its group
+	 */
+	final int[] leafWeightings;
+
+	/**
+	 * The group of every leaf
+	 */
+	final int[] leafGroups;
+
+	/**
+	 * The weighting of every group within its parent group, 0 for the root
+	 */
+	final int[] groupWeightings;
+
+	/**
+	 * The parent of every group, -1 for the root
+	 */
+	final int[] groupParents;
+
+	/**
+	 * The share of every leaf in the average when all grades are set
+	 */
+	final double[] coefficients;
+
+	/**
+	 * Creates the formula from the arrays, which are used directly
+	 */
+	private FlatFormula (final Grade[] leaves, final int[] leafGroups, final int[] groupWeightings, final int[] groupParents) {
+		this.leaves = leaves;
+		this.leafGroups = leafGroups;
+		this.groupWeightings = groupWeightings;
+		this.groupParents = groupParents;
+
+		leafWeightings = new int[leaves.length];
+		for (int i = 0; i < leaves.length; i++)
+			leafWeightings[i] = leaves[i].weighting;
+
+		// The total weighting of every group, of both its leaves and its sub-groups
+		final long[] groupTotals = new long[groupParents.length];
+		for (int i = 0; i < leaves.length; i++)
+			groupTotals[leafGroups[i]] += leafWeightings[i];
+		for (int group = 1; group < groupParents.length; group++)
+			groupTotals[groupParents[group]] += groupWeightings[group];
+
+		// Parents come before their children, so the share of the parent is known already
+		final double[] groupShares = new double[groupParents.length];
+		groupShares[0] = 1D;
+		for (int group = 1; group < groupParents.length; group++) {
+			final int parent = groupParents[group];
+			groupShares[group] = groupTotals[parent] == 0 ? 0D : groupShares[parent] * groupWeightings[group] / groupTotals[parent];
+		}
+
+		coefficients = new double[leaves.length];
+		for (int i = 0; i < leaves.length; i++) {
+			final int group = leafGroups[i];
+			coefficients[i] = groupTotals[group] == 0 ? 0D : groupShares[group] * leafWeightings[i] / groupTotals[group];
+		}
+	}
+
+	/**
+	 * Flattens the calculator and all of its sub-calculators
+	 *
+	 * @param calculator The root of the tree
+	 * @param resolver   Tells which grades have sub-grades
+	 * @return The flattened formula
+	 */
+	public static FlatFormula compile (final Calculator calculator, final Resolver resolver) {
+		final List<Grade> leaves = new ArrayList<>();
+		final List<Integer> leafGroups = new ArrayList<>();
+		final List<Integer> groupWeightings = new ArrayList<>();
+		final List<Integer> groupParents = new ArrayList<>();
+
+		groupWeightings.add(0);
+		groupParents.add(-1);
+		compile(calculator, 0, resolver, leaves, leafGroups, groupWeightings, groupParents);
+
+		return new FlatFormula(leaves.toArray(new Grade[leaves.size()]), toArray(leafGroups), toArray(groupWeightings), toArray(groupParents));
+	}
+
+	/**
+	 * Adds the grades of the calculator to the lists, this is called recursively for every sub-calculator
+	 *
+	 * @param calculator The calculator of the group
+	 * @param group      The index of the group
+	 */
+	private static void compile (final Calculator calculator, final int group, final Resolver resolver, final List<Grade> leaves, final List<Integer> leafGroups,
+								 final List<Integer> groupWeightings, final List<Integer> groupParents) {
+		for (final Grade grade : calculator.grades) {
+			final Calculator subCalculator = resolver.getCalculator(grade);
+			if (subCalculator != null) {
+				final int subGroup = groupParents.size();
+				groupWeightings.add(grade.weighting);
+				groupParents.add(group);
+				compile(subCalculator, subGroup, resolver, leaves, leafGroups, groupWeightings, groupParents);
+			} else {
+				leaves.add(grade);
+				leafGroups.add(group);
+			}
+		}
+	}
+
+	/**
+	 * Converts a list of integers to an array
+	 */
+	private static int[] toArray (final List<Integer> list) {
+		final int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+	/**
+	 * Returns the amount of leaf grades
+	 *
+	 * @return The amount of leaves
+	 */
+	public int getSize () {
+		return leaves.length;
+	}
+
+	/**
+	 * Returns the leaf grade at the index
+	 *
+	 * @param index The index of the leaf
+	 * @return The grade
+	 */
+	public Grade getLeaf (final int index) {
+		return leaves[index];
+	}
+
+	/**
+	 * Returns the share of the leaf in the average when all grades are set. All coefficients add up to 1 (except for rounding)
+	 *
+	 * @param index The index of the leaf
+	 * @return The coefficient of the leaf
+	 */
+	public double getCoefficient (final int index) {
+		return coefficients[index];
+	}
+
+	/**
+	 * Checks if any of the leaves is set
+	 *
+	 * @return Whether any grade has a value
+	 */
+	public boolean hasValue () {
+		for (final Grade leaf : leaves)
+			if (leaf.hasValue())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Calculates the average of the whole tree, the same as {@link com.grademanager.parser.grade.Calculator#calculateAverage()} on the root would do
+	 *
+	 * @return The average, or 0 when no grade is set
+	 */
+	public double calculateAverage () {
+		final double[] totals = new double[groupParents.length];
+		final long[] totalWeightings = new long[groupParents.length];
+		for (int i = 0; i < leaves.length; i++) {
+			final Grade leaf = leaves[i];
+			if (leaf.hasValue()) {
+				totals[leafGroups[i]] += leaf.getValue() * leafWeightings[i];
+				totalWeightings[leafGroups[i]] += leafWeightings[i];
+			}
+		}
+
+		// Children have a higher index than their parent, so going backwards every group is complete before it is added to its parent
+		for (int group = groupParents.length - 1; group > 0; group--) {
+			if (totalWeightings[group] != 0) {
+				final int parent = groupParents[group];
+				totals[parent] += totals[group] / totalWeightings[group] * groupWeightings[group];
+				totalWeightings[parent] += groupWeightings[group];
+			}
+		}
+
+		if (totalWeightings[0] != 0)
+			return totals[0] / totalWeightings[0];
+		return 0D;
+	}
+
+	/**
+	 * Calculates how much the average moves per point of every leaf (the derivative of the average to the leaf), with the current values of the other leaves. For a set
+	 * leaf this is its current share in the average; for a leaf which is not set it is the share it gets once it is set, which is how much every point of that grade counts.
+	 *
+	 * @return The sensitivity of every leaf, with the same index as the leaves
+	 */
+	public double[] calculateSensitivities () {
+		return calculateSensitivities(new double[leaves.length]);
+	}
+
+	/**
+	 * Calculates the sensitivity of every leaf into the given array, see {@link #calculateSensitivities()}. This takes one pass over the leaves and the groups to collect the
+	 * set weightings, and one pass back down the tree; so all leaves cost the same as a single average.
+	 *
+	 * @param sensitivities The array to write the sensitivities to, at least as long as the amount of leaves
+	 * @return The given array
+	 */
+	public double[] calculateSensitivities (final double[] sensitivities) {
+		final boolean[] set = new boolean[leaves.length];
+		for (int i = 0; i < leaves.length; i++)
+			set[i] = leaves[i].hasValue();
+		return calculateShares(set, sensitivities);
+	}
+
+	/**
+	 * Writes the average as a linear function of the given leaves, for when these are set: <pre>average = constant + sum(coefficient * value)</pre> The other leaves keep
+	 * their current values. Once all given leaves are set, it is known which groups count, so the average is linear in them.
+	 *
+	 * @param unknowns     The indices of the leaves, their current values are ignored
+	 * @param coefficients The array to write the coefficient of every given leaf to, with the same index as the unknowns
+	 * @return The constant
+	 */
+	public double linearise (final int[] unknowns, final double[] coefficients) {
+		final boolean[] set = new boolean[leaves.length];
+		final boolean[] unknown = new boolean[leaves.length];
+		for (int i = 0; i < leaves.length; i++)
+			set[i] = leaves[i].hasValue();
+		for (final int index : unknowns)
+			set[index] = unknown[index] = true;
+
+		final double[] shares = calculateShares(set, new double[leaves.length]);
+		double constant = 0D;
+		for (int i = 0; i < leaves.length; i++)
+			if (set[i] && !unknown[i])
+				constant += shares[i] * leaves[i].getValue();
+		for (int i = 0; i < unknowns.length; i++)
+			coefficients[i] = shares[unknowns[i]];
+		return constant;
+	}
+
+	/**
+	 * Calculates the share of every leaf in the average, when the given leaves are set. A leaf which is not set gets the share it would have once it is set.
+	 *
+	 * @param set    Which leaves count as set
+	 * @param shares The array to write the shares to
+	 * @return The given array
+	 */
+	private double[] calculateShares (final boolean[] set, final double[] shares) {
+		// The set weighting of every group, collected the same way as in calculateAverage
+		final long[] totalWeightings = new long[groupParents.length];
+		for (int i = 0; i < leaves.length; i++)
+			if (set[i])
+				totalWeightings[leafGroups[i]] += leafWeightings[i];
+		for (int group = groupParents.length - 1; group > 0; group--)
+			if (totalWeightings[group] != 0)
+				totalWeightings[groupParents[group]] += groupWeightings[group];
+
+		// Going down, the share of a group is the share of its parent times its part of the parent; a group which is not set gets the part it would have once it is set
+		final double[] groupShares = new double[groupParents.length];
+		groupShares[0] = 1D;
+		for (int group = 1; group < groupParents.length; group++) {
+			final int parent = groupParents[group];
+			final long weighting = groupWeightings[group];
+			final long total = totalWeightings[parent] + (totalWeightings[group] != 0 ? 0 : weighting);
+			groupShares[group] = total == 0 ? 0D : groupShares[parent] * weighting / total;
+		}
+
+		for (int i = 0; i < leaves.length; i++) {
+			final int group = leafGroups[i];
+			final long weighting = leafWeightings[i];
+			final long total = totalWeightings[group] + (set[i] ? 0 : weighting);
+			shares[i] = total == 0 ? 0D : groupShares[group] * weighting / total;
+		}
+		return shares;
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.grade.util.Rational;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The parsed weight structure of an expression: the names and weightings of its grades. This is immutable, so one instance can be shared by everything that uses the same
+ * expression. The actual {@link com.grademanager.parser.grade.Grade} objects, which hold the values, are created with {@link #createGrades()}.<br/>
+ * Different expressions can have the same meaning, like "(SE1+SE2)/2", "(SE2+SE1)/2" and "(2SE1+2SE2)/4". These all have the same {@link #getCanonical() canonical form}
+ * and {@link #getFingerprint() fingerprint}, so they can be recognised as one formula.
+ *
+ * @author Wesley A
+ */
+public final class Formula {
+
+	// Constants which are used within this class only
+	private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private static final char CHAR_PLUS = '+';
+
+	private static final char CHAR_DIVIDE = '/';
+
+	private static final char CHAR_BRACKET_OPEN = '(';
+
+	private static final char CHAR_BRACKET_CLOSE = ')';
+
+	/**
+	 * The expression this formula is parsed from
+	 */
+	public final String expression;
+
+	/**
+	 * The names of the grades
+	 */
+	private final String[] names;
+
+	/**
+	 * The weightings of the grades, with the same index as {@link #names}
+	 */
+	private final int[] weightings;
+
+	/**
+	 * The canonical form, created when it is needed for the first time. Computing it twice in different threads gives an equal result, so this does not need a lock
+	 */
+	private volatile Formula canonical;
+
+	/**
+	 * The fingerprint of the canonical form, only valid when {@link #canonical} is set
+	 */
+	private long fingerprint;
+
+	/**
+	 * Creates a formula with the given grades
+	 *
+	 * @param expression The expression the grades are parsed from
+	 * @param names      The names of the grades
+	 * @param weightings The weightings of the grades, with the same index as the names
+	 * @throws IllegalArgumentException when the arrays do not have the same length
+	 */
+	public Formula (final String expression, final String[] names, final int[] weightings) {
+		if (names.length != weightings.length)
+			throw new IllegalArgumentException();
+		this.expression = expression;
+		this.names = names.clone();
+		this.weightings = weightings.clone();
+	}
+
+	/**
+	 * Parses the expression with {@link com.grademanager.parser.grade.ExpressionCalculator}
+	 *
+	 * @param expression The expression to parse
+	 * @return The formula of the expression
+	 * @throws com.grademanager.parser.SyntaxException when the expression is not valid
+	 */
+	public static Formula parse (final String expression) {
+		final Calculator calculator = new ExpressionCalculator(expression);
+
+		final String[] names = new String[calculator.grades.size()];
+		final int[] weightings = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			final Grade grade = calculator.grades.get(i);
+			names[i] = grade.name;
+			weightings[i] = grade.weighting;
+		}
+		return new Formula(expression, names, weightings);
+	}
+
+	/**
+	 * Returns the amount of grades
+	 *
+	 * @return The amount of grades
+	 */
+	public int getSize () {
+		return names.length;
+	}
+
+	/**
+	 * Returns the name of the grade at the index
+	 *
+	 * @param index The index of the grade
+	 * @return The name of the grade
+	 */
+	public String getName (final int index) {
+		return names[index];
+	}
+
+	/**
+	 * Returns the weighting of the grade at the index
+	 *
+	 * @param index The index of the grade
+	 * @return The weighting of the grade
+	 */
+	public int getWeighting (final int index) {
+		return weightings[index];
+	}
+
+	/**
+	 * Returns the canonical form of this formula: the names are sorted, a name which is used more than once gets the sum of its weightings (and is left out when that is 0),
+	 * and all weightings are divided by their greatest common divisor. The expression of the canonical form is written like "(SE1+2SE2)/3". Formulas with the same meaning have an equal canonical form.
+	 *
+	 * @return The canonical form, which is this formula when it already is canonical
+	 */
+	public Formula getCanonical () {
+		Formula canonical = this.canonical;
+		if (canonical == null) {
+			canonical = createCanonical();
+			fingerprint = canonical.computeFingerprint();
+			if (canonical != this) {
+				canonical.canonical = canonical;
+				canonical.fingerprint = fingerprint;
+			}
+			this.canonical = canonical;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Returns a 64-bit fingerprint of the {@link #getCanonical() canonical form}, so formulas with the same meaning have the same fingerprint. Different formulas almost always
+	 * have a different fingerprint, but use {@link #isEquivalent(Formula)} to be sure.
+	 *
+	 * @return The fingerprint
+	 */
+	public long getFingerprint () {
+		getCanonical();
+		return fingerprint;
+	}
+
+	/**
+	 * Checks if the formula has the same meaning as this one, which is when their canonical forms have the same names and weightings
+	 *
+	 * @param formula The formula to compare with
+	 * @return Whether the formulas are equivalent
+	 */
+	public boolean isEquivalent (final Formula formula) {
+		if (formula == this)
+			return true;
+		if (formula == null || getFingerprint() != formula.getFingerprint())
+			return false;
+		final Formula a = getCanonical();
+		final Formula b = formula.getCanonical();
+		return Arrays.equals(a.names, b.names) && Arrays.equals(a.weightings, b.weightings);
+	}
+
+	/**
+	 * Creates the canonical form
+	 *
+	 * @return The canonical form, or this formula when it already is canonical
+	 */
+	private Formula createCanonical () {
+		final Map<String, Long> merged = new TreeMap<>();
+		long divisor = 0L;
+		for (int i = 0; i < names.length; i++) {
+			final Long weighting = merged.get(names[i]);
+			merged.put(names[i], weighting == null ? weightings[i] : weighting + weightings[i]);
+		}
+		// A name whose weightings cancel out, like in "(A+-1A+B)/1", does not count at all. Written as "0A" it would be parsed back with weighting 1
+		final Iterator<Long> iterator = merged.values().iterator();
+		while (iterator.hasNext())
+			if (iterator.next() == 0L)
+				iterator.remove();
+		// The greatest common divisor only works with values which are not negative, the sign stays in the weighting
+		for (final Long weighting : merged.values())
+			divisor = Rational.gcd(divisor, Math.abs(weighting));
+		if (divisor == 0L)
+			divisor = 1L;
+
+		final String[] names = new String[merged.size()];
+		final int[] weightings = new int[names.length];
+		long total = 0L;
+		int i = 0;
+		for (final Map.Entry<String, Long> entry : merged.entrySet()) {
+			names[i] = entry.getKey();
+			weightings[i++] = (int) (entry.getValue() / divisor);
+			total += entry.getValue() / divisor;
+		}
+
+		final StringBuilder expression = new StringBuilder().append(CHAR_BRACKET_OPEN);
+		for (i = 0; i < names.length; i++) {
+			if (i != 0)
+				expression.append(CHAR_PLUS);
+			if (weightings[i] != 1)
+				expression.append(weightings[i]);
+			expression.append(names[i]);
+		}
+		expression.append(CHAR_BRACKET_CLOSE).append(CHAR_DIVIDE).append(total);
+
+		final String text = expression.toString();
+		if (text.equals(this.expression) && Arrays.equals(names, this.names) && Arrays.equals(weightings, this.weightings))
+			return this;
+		return new Formula(text, names, weightings);
+	}
+
+	/**
+	 * Computes the FNV-1a hash of the names and weightings, every name is followed by a 0 char and its weighting
+	 *
+	 * @return The fingerprint
+	 */
+	private long computeFingerprint () {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < names.length; i++) {
+			final String name = names[i];
+			for (int j = 0; j < name.length(); j++) {
+				final char c = name.charAt(j);
+				hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+				hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+			}
+			hash *= FNV_PRIME; // the 0 char, xor with 0 does nothing
+			hash *= FNV_PRIME;
+			for (int shift = 0; shift < 32; shift += 8)
+				hash = (hash ^ ((weightings[i] >>> shift) & 0xFF)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Creates new {@link com.grademanager.parser.grade.Grade} objects for this formula, where none of them is set
+	 *
+	 * @return The grades
+	 */
+	public Grade[] createGrades () {
+		final Grade[] grades = new Grade[names.length];
+		for (int i = 0; i < grades.length; i++)
+			grades[i] = new Grade(names[i], weightings[i]);
+		return grades;
+	}
+
+	/**
+	 * Creates a new {@link com.grademanager.parser.grade.CompiledCalculator} for this formula, where none of the grades is set
+	 *
+	 * @return The calculator
+	 */
+	public CompiledCalculator createCalculator () {
+		return new CompiledCalculator(names, weightings);
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache of parsed {@link com.grademanager.parser.grade.Formula} objects, keyed by the expression text. The same expressions are used over and over again (for
+ * instance "(SE1+SE2+SE3+SE4)/4" in the formulas of the schools), so these only have to be parsed once.<br/>
+ * The cache holds at most {@link #maxSize} formulas; when it is full the least recently used formula is evicted. The hit, miss and eviction counts can be used to pick a
+ * proper size.<br/>
+ * Equivalent expressions, like "(SE1+SE2)/2" and "(SE2+SE1)/2", can share one canonical formula through {@link #getCanonical(String)}. The canonical formulas are kept
+ * in the same way, at most {@link #maxSize} of them.
+ *
+ * @author Wesley A
+ */
+public class FormulaCache {
+
+	// Constants which are used within this class only
+	private static final int DEFAULT_MAX_SIZE = 256;
+
+	private static final String EXCEPTION_INVALID_SIZE = "The size of the cache must be at least 1";
+
+	/**
+	 * A map in access order which removes the least recently used entry when it holds more than {@link #maxSize} entries
+	 *
+	 * @author Wesley A
+	 */
+	private final class LruMap<K> extends LinkedHashMap<K, Formula> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Whether the removed entries are counted as {@link #evictions}
+		 */
+		private final boolean counted;
+
+		private LruMap (final boolean counted) {
+			super(16, 0.75F, true);
+			this.counted = counted;
+		}
+
+		@Override
+		protected boolean removeEldestEntry (final Map.Entry<K, Formula> eldest) {
+			if (size() > maxSize) {
+				if (counted)
+					evictions++;
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The cache which is shared by the whole app
+	 */
+	public static final FormulaCache instance = new FormulaCache(DEFAULT_MAX_SIZE);
+
+	/**
+	 * The maximum amount of formulas in this cache
+	 */
+	public final int maxSize;
+
+	/**
+	 * The cached formulas in access order, so the first entry is the least recently used one
+	 */
+	private final Map<String, Formula> formulas;
+
+	/**
+	 * The canonical formulas by fingerprint in access order, so every meaning which is used has one shared formula
+	 */
+	private final Map<Long, Formula> canonicals;
+
+	/**
+	 * The amount of times a formula was found in the cache
+	 */
+	private long hits = 0;
+
+	/**
+	 * The amount of times a formula had to be parsed
+	 */
+	private long misses = 0;
+
+	/**
+	 * The amount of formulas removed to make room for another one
+	 */
+	private long evictions = 0;
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maxSize The maximum amount of formulas in this cache
+	 * @throws IllegalArgumentException when the size is smaller than 1
+	 */
+	public FormulaCache (final int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException(EXCEPTION_INVALID_SIZE);
+		this.maxSize = maxSize;
+		this.formulas = new LruMap<>(true);
+		this.canonicals = new LruMap<>(false);
+	}
+
+	/**
+	 * Retrieves the formula of the expression. When it is not in the cache yet, it is parsed and added to the cache. The parsing happens outside the lock, so other threads
+	 * are not blocked by it.
+	 *
+	 * @param expression The expression to get the formula of
+	 * @return The formula of the expression
+	 * @throws com.grademanager.parser.SyntaxException when the expression is not valid, invalid expressions are never cached
+	 */
+	public Formula get (final String expression) {
+		synchronized (this) {
+			final Formula formula = formulas.get(expression);
+			if (formula != null) {
+				hits++;
+				return formula;
+			}
+			misses++;
+		}
+
+		final Formula parsed = Formula.parse(expression);
+		synchronized (this) {
+			// Another thread might have parsed the same expression in the meantime, keep the first one so everyone shares it
+			final Formula formula = formulas.get(expression);
+			if (formula != null)
+				return formula;
+			formulas.put(expression, parsed);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Retrieves the {@link Formula#getCanonical() canonical form} of the expression. All expressions with the same meaning get the same object while it is in this cache,
+	 * so it can be used as key for anything which only depends on the meaning of a formula. After it is evicted an equal, but new, canonical formula is shared.
+	 *
+	 * @param expression The expression to get the canonical formula of
+	 * @return The canonical formula
+	 * @throws com.grademanager.parser.SyntaxException when the expression is not valid
+	 */
+	public Formula getCanonical (final String expression) {
+		final Formula canonical = get(expression).getCanonical();
+		final Long fingerprint = canonical.getFingerprint();
+		synchronized (this) {
+			final Formula shared = canonicals.get(fingerprint);
+			if (shared == null) {
+				canonicals.put(fingerprint, canonical);
+				return canonical;
+			}
+			// A different formula with the same fingerprint is very unlikely, but then it simply is not shared
+			return shared.isEquivalent(canonical) ? shared : canonical;
+		}
+	}
+
+	/**
+	 * Removes all formulas from this cache, the counts are kept
+	 */
+	public synchronized void clear () {
+		formulas.clear();
+		canonicals.clear();
+	}
+
+	/**
+	 * Returns the amount of formulas in this cache
+	 *
+	 * @return The amount of formulas
+	 */
+	public synchronized int getSize () {
+		return formulas.size();
+	}
+
+	/**
+	 * Returns the amount of times a formula was found in this cache
+	 *
+	 * @return The amount of hits
+	 */
+	public synchronized long getHitCount () {
+		return hits;
+	}
+
+	/**
+	 * Returns the amount of times a formula was not found in this cache and had to be parsed
+	 *
+	 * @return The amount of misses
+	 */
+	public synchronized long getMissCount () {
+		return misses;
+	}
+
+	/**
+	 * Returns the amount of formulas removed to make room for another one
+	 *
+	 * @return The amount of evictions
+	 */
+	public synchronized long getEvictionCount () {
+		return evictions;
+	}
+}
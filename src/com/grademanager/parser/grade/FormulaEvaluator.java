@@ -0,0 +1,379 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+/**
+ * Calculates averages of a formula directly on a row of values in a double array, without any {@link com.grademanager.parser.grade.Grade} objects. This is meant for
+ * evaluating the same formula for a lot of rows. A grade which is not set has the value {@link Double#NaN} in the row.<br/>
+ * Every formula gets an implementation which fits its shape: when all weightings are the same only the values are added up, a formula without sub-groups uses a single
+ * weighting array, and only a {@link com.grademanager.parser.grade.FlatFormula} with sub-groups needs to track the totals per group. The shape is chosen once by {@link
+ * #compile(Formula)}, so evaluating a row does not have to check it.
+ *
+ * @author Wesley A
+ */
+public abstract class FormulaEvaluator {
+
+	// Constants which are used within this class only
+	private static final String FORMAT_INVALID_INDEX = "Invalid grade index %d";
+
+	private static final String FORMAT_ROW_TOO_SHORT = "Row at offset %d needs %d values, but the array has %d";
+
+	/**
+	 * Used when all weightings are the same, the average is simply the mean of the set values
+	 *
+	 * @author Wesley A
+	 */
+	private static final class UniformEvaluator extends FormulaEvaluator {
+
+		private UniformEvaluator (final int size) {
+			super(size);
+		}
+
+		@Override
+		public double calculateAverage (final double[] values, final int offset) {
+			checkRow(values, offset);
+			double total = 0D;
+			int count = 0;
+			for (int i = offset, end = offset + size; i < end; i++) {
+				final double value = values[i];
+				if (value == value) { // Not NaN, so the grade is set
+					total += value;
+					count++;
+				}
+			}
+			return count != 0 ? total / count : 0D;
+		}
+
+		@Override
+		public double calculateGrade (final double[] values, final int offset, final int index, final double average) {
+			checkRow(values, offset);
+			checkIndex(index);
+			double total = 0D;
+			int count = 1;
+			for (int i = 0; i < size; i++) {
+				final double value = values[offset + i];
+				if (i != index && value == value) {
+					total += value;
+					count++;
+				}
+			}
+			return average * count - total;
+		}
+	}
+
+	/**
+	 * Used for a formula without sub-groups
+	 *
+	 * @author Wesley A
+	 */
+	private static final class WeightedEvaluator extends FormulaEvaluator {
+
+		/**
+		 * The weighting of every grade
+		 */
+		private final int[] weightings;
+
+		private WeightedEvaluator (final int[] weightings) {
+			super(weightings.length);
+			this.weightings = weightings;
+		}
+
+		@Override
+		public double calculateAverage (final double[] values, final int offset) {
+			checkRow(values, offset);
+			double total = 0D;
+			long totalWeighting = 0L;
+			for (int i = 0; i < size; i++) {
+				final double value = values[offset + i];
+				if (value == value) {
+					total += value * weightings[i];
+					totalWeighting += weightings[i];
+				}
+			}
+			return totalWeighting != 0 ? total / totalWeighting : 0D;
+		}
+
+		@Override
+		public double calculateGrade (final double[] values, final int offset, final int index, final double average) {
+			checkRow(values, offset);
+			checkIndex(index);
+			double total = 0D;
+			long totalWeighting = weightings[index];
+			for (int i = 0; i < size; i++) {
+				final double value = values[offset + i];
+				if (i != index && value == value) {
+					total += value * weightings[i];
+					totalWeighting += weightings[i];
+				}
+			}
+			return (average * totalWeighting - total) / weightings[index];
+		}
+	}
+
+	/**
+	 * Used for a {@link com.grademanager.parser.grade.FlatFormula} with sub-groups, this follows {@link com.grademanager.parser.grade.FlatFormula#calculateAverage()}
+	 *
+	 * @author Wesley A
+	 */
+	private static final class GroupedEvaluator extends FormulaEvaluator {
+
+		/**
+		 * The totals of every group while a row is evaluated, one per thread so evaluating a row does not create any objects
+		 *
+		 * @author Wesley A
+		 */
+		private static final class Scratch {
+
+			private final double[] totals;
+
+			private final long[] totalWeightings;
+
+			/**
+			 * Whether a group contains the grade of {@link #calculateGrade(double[], int, int, double)}, always false otherwise
+			 */
+			private final boolean[] path;
+
+			private Scratch (final int groups) {
+				totals = new double[groups];
+				totalWeightings = new long[groups];
+				path = new boolean[groups];
+			}
+		}
+
+		private final ThreadLocal<Scratch> scratches = new ThreadLocal<Scratch>() {
+			@Override
+			protected Scratch initialValue () {
+				return new Scratch(groupParents.length);
+			}
+		};
+
+		private final int[] leafWeightings;
+
+		private final int[] leafGroups;
+
+		private final int[] groupWeightings;
+
+		private final int[] groupParents;
+
+		private GroupedEvaluator (final FlatFormula formula) {
+			super(formula.leafWeightings.length);
+			this.leafWeightings = formula.leafWeightings;
+			this.leafGroups = formula.leafGroups;
+			this.groupWeightings = formula.groupWeightings;
+			this.groupParents = formula.groupParents;
+		}
+
+		@Override
+		public double calculateAverage (final double[] values, final int offset) {
+			checkRow(values, offset);
+			final Scratch scratch = scratches.get();
+			final double[] totals = scratch.totals;
+			final long[] totalWeightings = scratch.totalWeightings;
+			sumLeaves(values, offset, -1, totals, totalWeightings);
+			sumGroups(scratch);
+			return totalWeightings[0] != 0 ? totals[0] / totalWeightings[0] : 0D;
+		}
+
+		@Override
+		public double calculateGrade (final double[] values, final int offset, final int index, final double average) {
+			checkRow(values, offset);
+			checkIndex(index);
+			final Scratch scratch = scratches.get();
+			final double[] totals = scratch.totals;
+			final long[] totalWeightings = scratch.totalWeightings;
+			final boolean[] path = scratch.path;
+
+			// Every group which contains the grade is an affine function of its value: constant + slope * value. The other groups are added up as usual, but the groups on
+			// the path are left for the walk up below, so their totals only hold everything else
+			for (int group = leafGroups[index]; group != 0; group = groupParents[group])
+				path[group] = true;
+			sumLeaves(values, offset, index, totals, totalWeightings);
+			sumGroups(scratch);
+
+			int group = leafGroups[index];
+			long weighting = leafWeightings[index];
+			double constant = totals[group];
+			double slope = weighting;
+			while (true) {
+				// The group counts, since the grade is set; unless its weighting is 0, then its parent only has everything else
+				final long totalWeighting = totalWeightings[group] + weighting;
+				if (totalWeighting != 0) {
+					constant /= totalWeighting;
+					slope /= totalWeighting;
+				} else {
+					constant = 0D;
+					slope = 0D;
+				}
+				if (group == 0)
+					break;
+
+				path[group] = false;
+				weighting = totalWeighting != 0 ? groupWeightings[group] : 0;
+				final int parent = groupParents[group];
+				constant = totals[parent] + constant * weighting;
+				slope *= weighting;
+				group = parent;
+			}
+			return (average - constant) / slope;
+		}
+
+		/**
+		 * Starts the totals of every group with the set leaves in it
+		 *
+		 * @param exclude The index of a leaf to leave out, or -1
+		 */
+		private void sumLeaves (final double[] values, final int offset, final int exclude, final double[] totals, final long[] totalWeightings) {
+			for (int group = 0; group < totals.length; group++) {
+				totals[group] = 0D;
+				totalWeightings[group] = 0L;
+			}
+			for (int i = 0; i < size; i++) {
+				final double value = values[offset + i];
+				if (value == value && i != exclude) {
+					totals[leafGroups[i]] += value * leafWeightings[i];
+					totalWeightings[leafGroups[i]] += leafWeightings[i];
+				}
+			}
+		}
+
+		/**
+		 * Adds the average of every group which has a set grade to its parent, the children always come after their parent. A group on the {@link Scratch#path} is not added
+		 */
+		private void sumGroups (final Scratch scratch) {
+			final double[] totals = scratch.totals;
+			final long[] totalWeightings = scratch.totalWeightings;
+			for (int group = groupParents.length - 1; group > 0; group--) {
+				if (totalWeightings[group] != 0 && !scratch.path[group]) {
+					final int parent = groupParents[group];
+					totals[parent] += totals[group] / totalWeightings[group] * groupWeightings[group];
+					totalWeightings[parent] += groupWeightings[group];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The amount of values in a row
+	 */
+	public final int size;
+
+	private FormulaEvaluator (final int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Creates the evaluator of the formula, the values in a row have the same order as the grades of the formula
+	 *
+	 * @param formula The formula to evaluate
+	 * @return The evaluator
+	 */
+	public static FormulaEvaluator compile (final Formula formula) {
+		final int[] weightings = new int[formula.getSize()];
+		for (int i = 0; i < weightings.length; i++)
+			weightings[i] = formula.getWeighting(i);
+		return compile(weightings);
+	}
+
+	/**
+	 * Creates the evaluator of the calculator, the values in a row have the same order as the grades of the calculator. Every grade is one value, also when it is a
+	 * calculator of its own; use {@link #compile(FlatFormula)} for that.
+	 *
+	 * @param calculator The calculator to evaluate
+	 * @return The evaluator
+	 */
+	public static FormulaEvaluator compile (final Calculator calculator) {
+		final int[] weightings = new int[calculator.grades.size()];
+		for (int i = 0; i < weightings.length; i++)
+			weightings[i] = calculator.grades.get(i).weighting;
+		return compile(weightings);
+	}
+
+	/**
+	 * Creates the evaluator of the flattened formula, the values in a row have the same order as its leaves
+	 *
+	 * @param formula The formula to evaluate
+	 * @return The evaluator
+	 */
+	public static FormulaEvaluator compile (final FlatFormula formula) {
+		if (formula.groupParents.length > 1)
+			return new GroupedEvaluator(formula);
+		return compile(formula.leafWeightings.clone());
+	}
+
+	/**
+	 * Picks the evaluator for a formula without sub-groups
+	 *
+	 * @param weightings The weightings, which are used directly
+	 * @return The evaluator
+	 */
+	private static FormulaEvaluator compile (final int[] weightings) {
+		for (int i = 1; i < weightings.length; i++)
+			if (weightings[i] != weightings[0])
+				return new WeightedEvaluator(weightings);
+		// A weighting of 0 means that grade never counts, so that can not be treated as uniform
+		if (weightings.length != 0 && weightings[0] == 0)
+			return new WeightedEvaluator(weightings);
+		return new UniformEvaluator(weightings.length);
+	}
+
+	/**
+	 * Checks if the row fits in the array
+	 */
+	final void checkRow (final double[] values, final int offset) {
+		if (offset < 0 || values.length - offset < size)
+			throw new SyntaxException(FORMAT_ROW_TOO_SHORT, offset, size, values.length);
+	}
+
+	/**
+	 * Checks if the index is a grade of this formula
+	 */
+	final void checkIndex (final int index) {
+		if (index < 0 || index >= size)
+			throw new SyntaxException(FORMAT_INVALID_INDEX, index);
+	}
+
+	/**
+	 * Calculates the average of the row which starts at the offset
+	 *
+	 * @param values The array with the row, a grade which is not set is {@link Double#NaN}
+	 * @param offset The index of the first value of the row
+	 * @return The average, or 0 when no grade is set
+	 * @throws SyntaxException when the row does not fit in the array
+	 */
+	public abstract double calculateAverage (double[] values, int offset);
+
+	/**
+	 * Calculates the average of the row
+	 *
+	 * @param values The row, a grade which is not set is {@link Double#NaN}
+	 * @return The average, or 0 when no grade is set
+	 */
+	public double calculateAverage (final double[] values) {
+		return calculateAverage(values, 0);
+	}
+
+	/**
+	 * Calculates the value of a grade to get the given average, the same as {@link com.grademanager.parser.grade.Calculator#calculateGrade(Grade, double)} does.
+	 * The current value of that grade in the row is ignored, and the row is never changed.
+	 *
+	 * @param values  The array with the row, a grade which is not set is {@link Double#NaN}
+	 * @param offset  The index of the first value of the row
+	 * @param index   The index of the grade in the row
+	 * @param average The average to achieve
+	 * @return The value of the grade
+	 * @throws SyntaxException when the row does not fit in the array or the index is not valid
+	 */
+	public abstract double calculateGrade (double[] values, int offset, int index, double average);
+}
@@ -20,6 +20,23 @@ package com.grademanager.parser.grade;
  */
 public class Grade implements Cloneable {
 
+	/**
+	 * Gets notified when the value of a grade changes, see {@link #setListener(Listener)}
+	 *
+	 * @author Wesley A
+	 */
+	public static interface Listener {
+
+		/**
+		 * Called after the value of the grade has been set or reset
+		 *
+		 * @param grade    The grade which changed
+		 * @param wasSet   Whether the grade was set before the change
+		 * @param oldValue The value before the change, only valid when it was set
+		 */
+		void onGradeChanged (Grade grade, boolean wasSet, double oldValue);
+	}
+
 	/**
 	 * The name of this grade
 	 */
@@ -51,15 +68,52 @@ public class Grade implements Cloneable {
 	 */
 	protected boolean isSet = false;
 
+	/**
+	 * The listener which gets notified of changes, this usually is the calculator which holds this grade
+	 */
+	private Listener listener;
+
+	/**
+	 * Sets the listener which gets notified when the value of this grade changes. A grade has only one listener, which is normally the calculator which holds it.
+	 *
+	 * @param listener The listener, or null to remove it
+	 */
+	public void setListener (final Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the listener of this grade
+	 *
+	 * @return The listener or null when there is none
+	 */
+	public Listener getListener () {
+		return listener;
+	}
+
+	/**
+	 * Notifies the {@link #listener} of a change, subclasses which change the value without {@link #setValue(double)} or {@link #reset()} should call this
+	 *
+	 * @param wasSet   Whether this grade was set before the change
+	 * @param oldValue The value before the change
+	 */
+	protected final void notifyChanged (final boolean wasSet, final double oldValue) {
+		if (listener != null)
+			listener.onGradeChanged(this, wasSet, oldValue);
+	}
+
 	/**
 	 * Sets the grade value to this value.
 	 *
 	 * @param grade The value to set to
 	 */
 	public void setValue (final double grade) {
+		final boolean wasSet = isSet;
+		final double oldValue = value;
 		value = grade;
 		if (!isSet)
 			isSet = true;
+		notifyChanged(wasSet, oldValue);
 	}
 
 	/**
@@ -84,7 +138,10 @@ public class Grade implements Cloneable {
 	 * Resets this grade's value (it is not set after calling this)
 	 */
 	public void reset () {
-		isSet = false;
+		if (isSet) {
+			isSet = false;
+			notifyChanged(true, value);
+		}
 	}
 
 	@Override
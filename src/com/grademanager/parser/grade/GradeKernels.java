@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+/**
+ * The inner loops of the calculators, over primitive arrays of which a bitmap tells which values are set: value i is set when bit (i % 64) of word i / 64 is set.<br/>
+ * Every word of the bitmap picks its own loop while running. When all 64 bits are set the values of the word are visited by a plain loop without any bit tests,
+ * which the JIT compiler unrolls and, for the loops which do not add everything up into one value, turns into vector instructions. A word without set bits is
+ * skipped, and only the other words visit their set bits one at a time. So dense data runs at the speed of the memory, while sparse data only touches the values
+ * which are set. The values are always visited in the order of their index, so the results are exactly the same as a plain loop over the set values.
+ *
+ * @author Wesley A
+ */
+public final class GradeKernels {
+
+	// Constants which are used within this class only
+	private static final long ALL_SET = -1L;
+
+	private static final int WORD_SIZE = 64;
+
+	private static final int NONE = -1;
+
+	private GradeKernels () {}
+
+	/**
+	 * Calculates the sum of value * weighting of all set values
+	 *
+	 * @param values     The values
+	 * @param weightings The weightings, with the same index as the values
+	 * @param set        The bitmap of set values
+	 * @return The weighted sum
+	 */
+	public static double weightedSum (final double[] values, final int[] weightings, final long[] set) {
+		double total = 0D;
+		for (int word = 0; word < set.length; word++) {
+			long bits = set[word];
+			final int first = word << 6;
+			if (bits == ALL_SET) {
+				for (int i = first; i < first + WORD_SIZE; i++)
+					total += values[i] * weightings[i];
+			} else {
+				while (bits != 0) {
+					final int i = first + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					total += values[i] * weightings[i];
+				}
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Calculates the total weighting of all set values
+	 *
+	 * @param weightings The weightings
+	 * @param set        The bitmap of set values
+	 * @return The total weighting
+	 */
+	public static long totalWeighting (final int[] weightings, final long[] set) {
+		long totalWeighting = 0L;
+		for (int word = 0; word < set.length; word++) {
+			long bits = set[word];
+			final int first = word << 6;
+			if (bits == ALL_SET) {
+				for (int i = first; i < first + WORD_SIZE; i++)
+					totalWeighting += weightings[i];
+			} else {
+				while (bits != 0) {
+					totalWeighting += weightings[first + Long.numberOfTrailingZeros(bits)];
+					bits &= bits - 1;
+				}
+			}
+		}
+		return totalWeighting;
+	}
+
+	/**
+	 * Calculates the weighted average of all set values
+	 *
+	 * @param values     The values
+	 * @param weightings The weightings, with the same index as the values
+	 * @param set        The bitmap of set values
+	 * @return The average, or 0 when no value is set
+	 */
+	public static double average (final double[] values, final int[] weightings, final long[] set) {
+		return calculate(values, weightings, set, NONE, 0D);
+	}
+
+	/**
+	 * Calculates which value the given index needs to get the given average, where the other set values count
+	 *
+	 * @param values     The values
+	 * @param weightings The weightings, with the same index as the values
+	 * @param set        The bitmap of set values
+	 * @param index      The index of the value to calculate, its own value is ignored
+	 * @param average    The average to achieve
+	 * @return The value
+	 */
+	public static double requiredValue (final double[] values, final int[] weightings, final long[] set, final int index, final double average) {
+		return calculate(values, weightings, set, index, average);
+	}
+
+	/**
+	 * Adds value * weighting and the weighting of every set value in the range to the totals of its row. This is one column of a roster, where every value is a row.
+	 *
+	 * @param values          The values
+	 * @param valueOffset     The index of the value of row 0
+	 * @param weighting       The weighting of all values
+	 * @param set             The bitmap of set values
+	 * @param wordOffset      The index of the word of row 0
+	 * @param start           The first row, which is a multiple of 64
+	 * @param end             The row after the last row
+	 * @param totals          The weighted sums, where the first row is at index 0
+	 * @param totalWeightings The total weightings, where the first row is at index 0
+	 */
+	public static void accumulate (final double[] values, final int valueOffset, final int weighting, final long[] set, final int wordOffset, final int start,
+	                               final int end, final double[] totals, final long[] totalWeightings) {
+		for (int word = start >>> 6; word < (end + WORD_SIZE - 1) >>> 6; word++) {
+			long bits = set[wordOffset + word];
+			final int first = word << 6;
+			if (bits == ALL_SET && first + WORD_SIZE <= end) {
+				// Every row of the word is set, so one plain loop over the whole word
+				final int from = valueOffset + first;
+				final int to = first - start;
+				for (int i = 0; i < WORD_SIZE; i++) {
+					totals[to + i] += values[from + i] * weighting;
+					totalWeightings[to + i] += weighting;
+				}
+			} else {
+				while (bits != 0) {
+					final int row = first + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					if (row >= end)
+						break;
+					totals[row - start] += values[valueOffset + row] * weighting;
+					totalWeightings[row - start] += weighting;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the weighted sum and total weighting of the set values in one pass, except the excluded one
+	 *
+	 * @param exclude The index of the value to calculate, or {@link #NONE} to calculate the average
+	 * @param average The average to achieve when a value is calculated
+	 * @return The average or the value
+	 */
+	private static double calculate (final double[] values, final int[] weightings, final long[] set, final int exclude, final double average) {
+		double total = 0D;
+		long totalWeighting = 0L;
+		for (int word = 0; word < set.length; word++) {
+			long bits = set[word];
+			if (word == exclude >>> 6)
+				bits &= ~(1L << exclude);
+
+			final int first = word << 6;
+			if (bits == ALL_SET) {
+				for (int i = first; i < first + WORD_SIZE; i++) {
+					total += values[i] * weightings[i];
+					totalWeighting += weightings[i];
+				}
+			} else {
+				while (bits != 0) {
+					final int i = first + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+					total += values[i] * weightings[i];
+					totalWeighting += weightings[i];
+				}
+			}
+		}
+
+		if (exclude != NONE)
+			return (average * (totalWeighting + weightings[exclude]) - total) / weightings[exclude];
+		if (totalWeighting != 0)
+			return total / totalWeighting;
+		return 0D;
+	}
+}
@@ -0,0 +1,526 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+/**
+ * Finds values for several grades which are not known yet, such that the average reaches a target. The grades are chosen from a discrete scale (by default 1 to 10 in steps
+ * of 0.1), and of all combinations which reach the target the best one according to an objective is returned:
+ * <ul>
+ * <li>{@link #OBJECTIVE_MIN_MAX}: the highest grade is as low as possible, and then the grades together are as low as possible</li>
+ * <li>{@link #OBJECTIVE_BALANCED}: the sum of the squared grades is as low as possible, which spreads the effort over the grades</li>
+ * </ul>
+ * When all unknown grades are set the average is a linear function of them: <pre>average = constant + sum(coefficient * grade)</pre> The planner works on those
+ * coefficients with a branch-and-bound search. The grades with the largest coefficients are chosen first, and a branch is dropped as soon as a closed-form bound shows it
+ * can not reach the target or can not beat the best combination found so far. So even with many unknown grades only a small part of all combinations is visited. When the
+ * search takes more than {@link #maxNodes} steps it stops, and the best combination so far is returned as not optimal.
+ *
+ * @author Wesley A
+ */
+public class GradePlanner {
+
+	/**
+	 * Minimises the highest grade, then the total of the grades
+	 */
+	public static final int OBJECTIVE_MIN_MAX = 0;
+
+	/**
+	 * Minimises the sum of the squared grades
+	 */
+	public static final int OBJECTIVE_BALANCED = 1;
+
+	// Constants which are used within this class only
+	private static final double EPSILON = 1E-9;
+
+	private static final int DEFAULT_MAX_NODES = 1000000;
+
+	private static final int BISECTION_STEPS = 40;
+
+	private static final String EXCEPTION_INVALID_SCALE = "The scale needs a positive step and a lowest value which is not higher than the highest value";
+
+	private static final String FORMAT_INVALID_OBJECTIVE = "Invalid objective %d";
+
+	/**
+	 * A combination of grades which reaches the target
+	 *
+	 * @author Wesley A
+	 */
+	public static final class Plan {
+
+		/**
+		 * The indices of the grades, as given to the planner
+		 */
+		public final int[] indices;
+
+		/**
+		 * The value of every grade, at the same index as {@link #indices}
+		 */
+		public final double[] values;
+
+		/**
+		 * The average when all grades have these values
+		 */
+		public final double average;
+
+		/**
+		 * Whether the search was complete, otherwise this is the best plan found within {@link GradePlanner#maxNodes} steps
+		 */
+		public final boolean optimal;
+
+		private Plan (final int[] indices, final double[] values, final double average, final boolean optimal) {
+			this.indices = indices;
+			this.values = values;
+			this.average = average;
+			this.optimal = optimal;
+		}
+	}
+
+	/**
+	 * The average when all unknown grades are 0
+	 */
+	private final double constant;
+
+	/**
+	 * How much the average goes up per point of every unknown grade
+	 */
+	private final double[] coefficients;
+
+	/**
+	 * The indices of the unknown grades, which are given back in the {@link Plan}
+	 */
+	private final int[] indices;
+
+	/**
+	 * The lowest grade on the scale
+	 */
+	private double lowest = 1D;
+
+	/**
+	 * The highest grade on the scale
+	 */
+	private double highest = 10D;
+
+	/**
+	 * The step between two grades on the scale
+	 */
+	private double step = 0.1D;
+
+	/**
+	 * The maximum amount of steps of the search
+	 */
+	public int maxNodes = DEFAULT_MAX_NODES;
+
+	// The state of a search, in units of {@link #step} and in the order of the largest coefficient first
+	private int[] order;
+	private double[] sortedCoefficients;
+	private double[] restCoefficients;
+	private double[] restSquaredCoefficients;
+	private int lowestUnit;
+	private int highestUnit;
+	private int objective;
+	private double required;
+	private int[] current;
+	private int[] best;
+	private int bestMax;
+	private long bestScore;
+	private double lambda;
+	private long nodes;
+
+	/**
+	 * Creates a planner for the linear function of the unknown grades
+	 *
+	 * @param constant     The average when all unknown grades are 0
+	 * @param coefficients How much the average goes up per point of every unknown grade, these must not be negative
+	 * @param indices      The indices of the unknown grades, with the same length as the coefficients
+	 * @throws IllegalArgumentException when the arrays do not have the same length
+	 */
+	public GradePlanner (final double constant, final double[] coefficients, final int[] indices) {
+		if (coefficients.length != indices.length)
+			throw new IllegalArgumentException();
+		this.constant = constant;
+		this.coefficients = coefficients.clone();
+		this.indices = indices.clone();
+	}
+
+	/**
+	 * Creates a planner for the grades of the calculator which are not set
+	 *
+	 * @param calculator The calculator
+	 * @return The planner, of which the indices are the indices of the grades in the calculator
+	 */
+	public static GradePlanner create (final CompiledCalculator calculator) {
+		int count = 0;
+		for (int i = 0; i < calculator.getSize(); i++)
+			if (!calculator.hasValue(i))
+				count++;
+
+		final int[] unknowns = new int[count];
+		count = 0;
+		for (int i = 0; i < calculator.getSize(); i++)
+			if (!calculator.hasValue(i))
+				unknowns[count++] = i;
+		return create(calculator, unknowns);
+	}
+
+	/**
+	 * Creates a planner for the given grades of the calculator, the current value of those grades is ignored
+	 *
+	 * @param calculator The calculator
+	 * @param unknowns   The indices of the grades to plan
+	 * @return The planner
+	 */
+	public static GradePlanner create (final CompiledCalculator calculator, final int[] unknowns) {
+		final double[] coefficients = new double[unknowns.length];
+		final double constant = calculator.linearise(unknowns, coefficients);
+		return new GradePlanner(constant, coefficients, unknowns);
+	}
+
+	/**
+	 * Creates a planner for the leaves of the formula which are not set
+	 *
+	 * @param formula The flattened formula
+	 * @return The planner, of which the indices are the indices of the leaves
+	 */
+	public static GradePlanner create (final FlatFormula formula) {
+		int count = 0;
+		for (int i = 0; i < formula.getSize(); i++)
+			if (!formula.getLeaf(i).hasValue())
+				count++;
+
+		final int[] unknowns = new int[count];
+		count = 0;
+		for (int i = 0; i < formula.getSize(); i++)
+			if (!formula.getLeaf(i).hasValue())
+				unknowns[count++] = i;
+		return create(formula, unknowns);
+	}
+
+	/**
+	 * Creates a planner for the given leaves of the formula, the current value of those leaves is ignored
+	 *
+	 * @param formula  The flattened formula
+	 * @param unknowns The indices of the leaves to plan
+	 * @return The planner
+	 */
+	public static GradePlanner create (final FlatFormula formula, final int[] unknowns) {
+		final double[] coefficients = new double[unknowns.length];
+		final double constant = formula.linearise(unknowns, coefficients);
+		return new GradePlanner(constant, coefficients, unknowns);
+	}
+
+	/**
+	 * Sets the scale of the grades
+	 *
+	 * @param lowest  The lowest grade
+	 * @param highest The highest grade
+	 * @param step    The step between two grades
+	 * @return This planner
+	 * @throws IllegalArgumentException when the step is not positive or the lowest grade is higher than the highest
+	 */
+	public GradePlanner setScale (final double lowest, final double highest, final double step) {
+		if (!(step > 0D) || lowest > highest)
+			throw new IllegalArgumentException(EXCEPTION_INVALID_SCALE);
+		this.lowest = lowest;
+		this.highest = highest;
+		this.step = step;
+		return this;
+	}
+
+	/**
+	 * Finds the best combination of the unknown grades to reach the target
+	 *
+	 * @param target    The average to reach
+	 * @param objective {@link #OBJECTIVE_MIN_MAX} or {@link #OBJECTIVE_BALANCED}
+	 * @return The best plan, or null when the target can not be reached even with the highest grades
+	 * @throws SyntaxException when the objective is not valid
+	 */
+	public synchronized Plan plan (final double target, final int objective) {
+		if (objective != OBJECTIVE_MIN_MAX && objective != OBJECTIVE_BALANCED)
+			throw new SyntaxException(FORMAT_INVALID_OBJECTIVE, objective);
+
+		final int size = coefficients.length;
+		this.objective = objective;
+		lowestUnit = (int) Math.ceil(lowest / step - EPSILON);
+		highestUnit = (int) Math.floor(highest / step + EPSILON);
+		required = (target - constant) / step;
+
+		// Sort the grades by coefficient, largest first, with a simple insertion sort since there are only a few
+		order = new int[size];
+		for (int i = 0; i < size; i++) {
+			int j = i;
+			while (j > 0 && coefficients[order[j - 1]] < coefficients[i]) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+		sortedCoefficients = new double[size];
+		restCoefficients = new double[size + 1];
+		restSquaredCoefficients = new double[size + 1];
+		for (int i = size - 1; i >= 0; i--) {
+			sortedCoefficients[i] = Math.max(coefficients[order[i]], 0D);
+			restCoefficients[i] = restCoefficients[i + 1] + sortedCoefficients[i];
+			restSquaredCoefficients[i] = restSquaredCoefficients[i + 1] + sortedCoefficients[i] * sortedCoefficients[i];
+		}
+
+		if (required > highestUnit * restCoefficients[0] + EPSILON)
+			return null;
+
+		current = new int[size];
+		best = null;
+		nodes = 0;
+		boolean optimal = true;
+		if (required <= lowestUnit * restCoefficients[0] + EPSILON) {
+			// Even the lowest grades are enough, and nothing beats them
+			best = new int[size];
+			for (int i = 0; i < size; i++)
+				best[i] = lowestUnit;
+		} else {
+			findFirstPlan();
+			search(0, 0D, lowestUnit, 0L);
+			optimal = nodes <= maxNodes;
+		}
+
+		// Convert back to the original order and to grades
+		final double scale = 1D / step;
+		final double[] values = new double[size];
+		double average = constant;
+		for (int i = 0; i < size; i++) {
+			values[order[i]] = best[i] / scale;
+			average += coefficients[order[i]] * best[i] / scale;
+		}
+		final Plan plan = new Plan(indices.clone(), values, average, optimal);
+
+		order = null;
+		current = null;
+		best = null;
+		return plan;
+	}
+
+	/**
+	 * Finds a first plan, so the search can prune from the start: all grades at the lowest level which reaches the target, then every grade, starting with the smallest
+	 * coefficient, as low as possible while the target is still reached
+	 */
+	private void findFirstPlan () {
+		final int size = current.length;
+		final int level = Math.max(lowestUnit, Math.min(highestUnit, (int) Math.ceil(required / restCoefficients[0] - EPSILON)));
+		double sum = 0D;
+		for (int i = 0; i < size; i++) {
+			current[i] = level;
+			sum += sortedCoefficients[i] * level;
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			if (sortedCoefficients[i] > 0D) {
+				final int lowered = Math.max(lowestUnit, (int) Math.ceil((required - (sum - sortedCoefficients[i] * current[i])) / sortedCoefficients[i] - EPSILON));
+				if (lowered < current[i]) {
+					sum -= sortedCoefficients[i] * (current[i] - lowered);
+					current[i] = lowered;
+				}
+			} else {
+				sum -= sortedCoefficients[i] * (current[i] - lowestUnit);
+				current[i] = lowestUnit;
+			}
+		}
+		accept();
+	}
+
+	/**
+	 * Searches the values of the grades from the index on
+	 *
+	 * @param index   The grade to choose a value for
+	 * @param sum     The sum of the coefficients multiplied with the values of the grades before the index
+	 * @param max     The highest value of the grades before the index
+	 * @param score   The total or squared total of the values of the grades before the index
+	 */
+	private void search (final int index, final double sum, final int max, final long score) {
+		if (++nodes > maxNodes)
+			return;
+
+		final double rest = required - sum;
+		final int size = current.length;
+		if (index == size) {
+			if (rest <= EPSILON)
+				accept();
+			return;
+		}
+		// Not reachable anymore, even with the highest grades
+		if (highestUnit * restCoefficients[index] < rest - EPSILON)
+			return;
+		if (!canImprove(index, rest, max, score))
+			return;
+
+		final double coefficient = sortedCoefficients[index];
+		if (index == size - 1 || restCoefficients[index + 1] == 0D) {
+			// The last grade that matters: its value follows directly, the rest stays at the lowest level
+			int value = lowestUnit;
+			if (rest > EPSILON && coefficient > 0D)
+				value = Math.max(lowestUnit, (int) Math.ceil(rest / coefficient - EPSILON));
+			if (value > highestUnit)
+				return;
+			current[index] = value;
+			for (int i = index + 1; i < size; i++)
+				current[i] = lowestUnit;
+			if (isBetter(Math.max(max, value), score + score(value) + (long) (size - index - 1) * score(lowestUnit)))
+				accept();
+			return;
+		}
+
+		if (objective == OBJECTIVE_MIN_MAX) {
+			final int limit = Math.min(highestUnit, bestMax);
+			for (int value = lowestUnit; value <= limit; value++) {
+				current[index] = value;
+				search(index + 1, sum + coefficient * value, Math.max(max, value), score + score(value));
+				if (nodes > maxNodes)
+					return;
+			}
+		} else {
+			// The best plan is close to the bound, so start at the value of the bound and move away from it on both sides
+			final int center = (int) Math.round(clamp(lambda * coefficient));
+			for (int offset = 0; center + offset <= highestUnit || center - offset > lowestUnit; offset++) {
+				for (int side = 0; side < 2; side++) {
+					final int value = side == 0 ? center + offset : center - offset - 1;
+					if (value < lowestUnit || value > highestUnit)
+						continue;
+					current[index] = value;
+					search(index + 1, sum + coefficient * value, Math.max(max, value), score + score(value));
+					if (nodes > maxNodes)
+						return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks with closed-form bounds whether the grades from the index on can still give a better plan than the best one
+	 */
+	private boolean canImprove (final int index, final double rest, final int max, final long score) {
+		if (objective == OBJECTIVE_MIN_MAX) {
+			// The remaining grades need at least the level at which all of them together reach the target
+			int lowerMax = max;
+			if (rest > EPSILON)
+				lowerMax = Math.max(lowerMax, Math.max(lowestUnit, (int) Math.ceil(rest / restCoefficients[index] - EPSILON)));
+			if (lowerMax != bestMax)
+				return lowerMax < bestMax;
+			return score + lowestTotal(index, rest, bestMax) < bestScore;
+		}
+
+		// The squares are whole numbers, so the bound can be rounded up
+		return score + (long) Math.ceil(lowestSquares(index, rest) - EPSILON) < bestScore;
+	}
+
+	/**
+	 * Calculates the lowest possible sum of the squared grades from the index on (as fractions). Without the scale, the best grades are proportional to their coefficients
+	 * (x = lambda * c); within the scale they are clamped to it, and lambda is found by bisection.
+	 */
+	private double lowestSquares (final int index, final double rest) {
+		final int remaining = current.length - index;
+		if (rest <= lowestUnit * restCoefficients[index] + EPSILON) {
+			lambda = 0D;
+			return (double) remaining * lowestUnit * lowestUnit;
+		}
+
+		// Cauchy-Schwarz gives lambda = rest / sum c^2 when nothing is clamped, which is a good start for the upper end
+		double low = 0D;
+		double high = rest / restSquaredCoefficients[index];
+		while (reach(index, high) < rest - EPSILON)
+			high *= 2;
+		for (int i = 0; i < BISECTION_STEPS && high - low > EPSILON; i++) {
+			final double middle = (low + high) / 2;
+			if (reach(index, middle) < rest) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+
+		lambda = high;
+		double squares = 0D;
+		for (int i = index; i < current.length; i++) {
+			final double value = clamp(low * sortedCoefficients[i]);
+			squares += value * value;
+		}
+		return squares;
+	}
+
+	/**
+	 * Calculates how much the grades from the index on add when every grade is lambda times its coefficient, clamped to the scale
+	 */
+	private double reach (final int index, final double lambda) {
+		double sum = 0D;
+		for (int i = index; i < current.length; i++)
+			sum += sortedCoefficients[i] * clamp(lambda * sortedCoefficients[i]);
+		return sum;
+	}
+
+	/**
+	 * Clamps the value to the scale
+	 */
+	private double clamp (final double value) {
+		return Math.max(lowestUnit, Math.min(highestUnit, value));
+	}
+
+	/**
+	 * Calculates the lowest possible total of the grades from the index on (as fractions), when no grade may be higher than the cap. The grades with the largest
+	 * coefficients give the most per point, so these are raised first.
+	 */
+	private double lowestTotal (final int index, double rest, final int cap) {
+		final int remaining = current.length - index;
+		double total = (double) remaining * lowestUnit;
+		rest -= lowestUnit * restCoefficients[index];
+		for (int i = index; i < current.length && rest > EPSILON; i++) {
+			final double coefficient = sortedCoefficients[i];
+			if (coefficient > 0D) {
+				final double raise = Math.min(cap - lowestUnit, rest / coefficient);
+				total += raise;
+				rest -= raise * coefficient;
+			}
+		}
+		return total - EPSILON;
+	}
+
+	/**
+	 * The score of a single value for the objective
+	 */
+	private long score (final int value) {
+		return objective == OBJECTIVE_MIN_MAX ? value : (long) value * value;
+	}
+
+	/**
+	 * Checks whether a plan with the max and score is better than the best one
+	 */
+	private boolean isBetter (final int max, final long score) {
+		if (best == null)
+			return true;
+		if (objective == OBJECTIVE_MIN_MAX)
+			return max < bestMax || (max == bestMax && score < bestScore);
+		return score < bestScore;
+	}
+
+	/**
+	 * Makes the current values the best plan
+	 */
+	private void accept () {
+		int max = lowestUnit;
+		long score = 0L;
+		for (final int value : current) {
+			max = Math.max(max, value);
+			score += score(value);
+		}
+		if (isBetter(max, score)) {
+			best = current.clone();
+			bestMax = max;
+			bestScore = score;
+		}
+	}
+}
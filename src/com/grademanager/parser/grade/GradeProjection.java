@@ -0,0 +1,605 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Projects the final average by simulating the grades which are not set yet. Once all grades are set the average is <pre>constant + sum(coefficient * value)</pre> so
+ * every simulated outcome only draws a value for every unknown grade from its {@link Distribution}, without touching any {@link Grade} object. The outcomes are split
+ * into tasks of {@link #TASK_SAMPLES} samples which run on an {@link java.util.concurrent.ExecutorService}, and every task has its own random generator which is split
+ * off from the seed, so the same seed always gives the same projection regardless of how the tasks are scheduled.
+ *
+ * @author Wesley A
+ */
+public class GradeProjection {
+
+	/**
+	 * The amount of samples simulated by one task
+	 */
+	public static final int TASK_SAMPLES = 1 << 16;
+
+	/**
+	 * The amount of bins of the histogram when none is given, which makes bins of 0.1 on the default scale
+	 */
+	public static final int DEFAULT_BINS = 90;
+
+	// Constants which are used within this class only
+	private static final int TYPE_FIXED = 0;
+
+	private static final int TYPE_UNIFORM = 1;
+
+	private static final int TYPE_NORMAL = 2;
+
+	private static final int TYPE_EMPIRICAL = 3;
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private static final double DOUBLE_UNIT = 1D / (1L << 53);
+
+	private static final String EXCEPTION_INVALID_SCALE = "The lowest grade must be lower than the highest grade";
+
+	private static final String EXCEPTION_INVALID_DISTRIBUTIONS = "There must be a distribution for every coefficient";
+
+	private static final String EXCEPTION_EMPTY_HISTORY = "The history does not contain any grade";
+
+	private static final String FORMAT_INVALID_PROJECTION = "Invalid amount of samples %d or bins %d";
+
+	/**
+	 * Describes the values a grade which is not set yet can get. The values are always clamped to the scale of the projection.
+	 *
+	 * @author Wesley A
+	 */
+	public static final class Distribution {
+
+		/**
+		 * The type of the distribution, which is one of the TYPE constants
+		 */
+		final int type;
+
+		/**
+		 * The value, lowest value or mean
+		 */
+		final double first;
+
+		/**
+		 * The highest value or standard deviation
+		 */
+		final double second;
+
+		/**
+		 * The values to draw from for an empirical distribution
+		 */
+		final double[] values;
+
+		private Distribution (final int type, final double first, final double second, final double[] values) {
+			this.type = type;
+			this.first = first;
+			this.second = second;
+			this.values = values;
+		}
+
+		/**
+		 * Creates a distribution which is always the same value
+		 *
+		 * @param value The value
+		 * @return The distribution
+		 */
+		public static Distribution fixed (final double value) {
+			return new Distribution(TYPE_FIXED, value, 0D, null);
+		}
+
+		/**
+		 * Creates a distribution where every value between the lowest and highest value is equally likely
+		 *
+		 * @param lowest  The lowest value
+		 * @param highest The highest value
+		 * @return The distribution
+		 */
+		public static Distribution uniform (final double lowest, final double highest) {
+			return new Distribution(TYPE_UNIFORM, Math.min(lowest, highest), Math.abs(highest - lowest), null);
+		}
+
+		/**
+		 * Creates a normal distribution
+		 *
+		 * @param mean      The mean
+		 * @param deviation The standard deviation
+		 * @return The distribution
+		 */
+		public static Distribution normal (final double mean, final double deviation) {
+			return new Distribution(TYPE_NORMAL, mean, Math.abs(deviation), null);
+		}
+
+		/**
+		 * Creates a distribution which draws one of the given grades, for example the earlier grades of the student
+		 *
+		 * @param history The grades to draw from
+		 * @return The distribution
+		 * @throws IllegalArgumentException when there are no grades
+		 */
+		public static Distribution empirical (final double[] history) {
+			if (history.length == 0)
+				throw new IllegalArgumentException(EXCEPTION_EMPTY_HISTORY);
+			return new Distribution(TYPE_EMPIRICAL, 0D, 0D, history.clone());
+		}
+
+		/**
+		 * Creates a normal distribution with the mean and standard deviation of the given grades
+		 *
+		 * @param history The grades
+		 * @return The distribution
+		 * @throws IllegalArgumentException when there are no grades
+		 */
+		public static Distribution fit (final double[] history) {
+			if (history.length == 0)
+				throw new IllegalArgumentException(EXCEPTION_EMPTY_HISTORY);
+			double mean = 0D;
+			for (final double value : history)
+				mean += value;
+			mean /= history.length;
+
+			double squares = 0D;
+			for (final double value : history)
+				squares += (value - mean) * (value - mean);
+			return normal(mean, Math.sqrt(squares / history.length));
+		}
+	}
+
+	/**
+	 * The outcome of a projection
+	 *
+	 * @author Wesley A
+	 */
+	public static final class Result {
+
+		/**
+		 * The amount of simulated outcomes
+		 */
+		public final long samples;
+
+		/**
+		 * The amount of outcomes of which the average is at least the pass average
+		 */
+		public final long passes;
+
+		/**
+		 * The mean of all simulated averages
+		 */
+		public final double mean;
+
+		/**
+		 * The start of the first bin of the histogram
+		 */
+		public final double lowest;
+
+		/**
+		 * The end of the last bin of the histogram
+		 */
+		public final double highest;
+
+		/**
+		 * The amount of averages in every bin
+		 */
+		private final long[] histogram;
+
+		private Result (final long samples, final long passes, final double mean, final double lowest, final double highest, final long[] histogram) {
+			this.samples = samples;
+			this.passes = passes;
+			this.mean = mean;
+			this.lowest = lowest;
+			this.highest = highest;
+			this.histogram = histogram;
+		}
+
+		/**
+		 * Returns the chance to pass
+		 *
+		 * @return The part of the outcomes which passed, between 0 and 1
+		 */
+		public double getPassProbability () {
+			return samples == 0 ? 0D : (double) passes / samples;
+		}
+
+		/**
+		 * Returns the amount of bins of the histogram
+		 *
+		 * @return The amount of bins
+		 */
+		public int getBinCount () {
+			return histogram.length;
+		}
+
+		/**
+		 * Returns the average where the bin starts, the bin ends where the next bin starts
+		 *
+		 * @param bin The index of the bin
+		 * @return The start of the bin
+		 */
+		public double getBinStart (final int bin) {
+			return lowest + (highest - lowest) * bin / histogram.length;
+		}
+
+		/**
+		 * Returns the amount of averages in the bin
+		 *
+		 * @param bin The index of the bin
+		 * @return The amount of outcomes
+		 */
+		public long getCount (final int bin) {
+			return histogram[bin];
+		}
+
+		/**
+		 * Returns the chance that the average is in the bin
+		 *
+		 * @param bin The index of the bin
+		 * @return The chance between 0 and 1
+		 */
+		public double getProbability (final int bin) {
+			return samples == 0 ? 0D : (double) histogram[bin] / samples;
+		}
+	}
+
+	/**
+	 * A small random generator with the SplitMix64 algorithm. Every task gets its own generator, so the tasks do not have to share any state.
+	 *
+	 * @author Wesley A
+	 */
+	private static final class SplitMix {
+
+		private long seed;
+
+		private double nextGaussian;
+
+		private boolean hasNextGaussian;
+
+		SplitMix (final long seed) {
+			this.seed = seed;
+		}
+
+		long nextLong () {
+			long z = (seed += GOLDEN_GAMMA);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * Creates a new generator of which the values do not depend on the values of this generator
+		 */
+		SplitMix split () {
+			return new SplitMix(nextLong());
+		}
+
+		double nextDouble () {
+			return (nextLong() >>> 11) * DOUBLE_UNIT;
+		}
+
+		/**
+		 * Draws from the standard normal distribution with the polar method, which gives two values at once
+		 */
+		double nextGaussian () {
+			if (hasNextGaussian) {
+				hasNextGaussian = false;
+				return nextGaussian;
+			}
+
+			double x, y, s;
+			do {
+				x = 2D * nextDouble() - 1D;
+				y = 2D * nextDouble() - 1D;
+				s = x * x + y * y;
+			} while (s >= 1D || s == 0D);
+			final double multiplier = Math.sqrt(-2D * Math.log(s) / s);
+			nextGaussian = y * multiplier;
+			hasNextGaussian = true;
+			return x * multiplier;
+		}
+	}
+
+	/**
+	 * The average when all unknown grades are 0
+	 */
+	public final double constant;
+
+	/**
+	 * How much the average moves per point of every unknown grade
+	 */
+	private final double[] coefficients;
+
+	/**
+	 * The distributions split into primitive arrays, with the same index as the coefficients
+	 */
+	private final int[] types;
+
+	private final double[] firsts;
+
+	private final double[] seconds;
+
+	private final double[][] pools;
+
+	/**
+	 * The scale of the grades, the drawn values are clamped to it
+	 */
+	private double lowest = 1D;
+
+	private double highest = 10D;
+
+	/**
+	 * Creates a projection of the average constant + sum(coefficient * value)
+	 *
+	 * @param constant      The average when all unknown grades are 0
+	 * @param coefficients  How much the average moves per point of every unknown grade
+	 * @param distributions The distribution of every unknown grade
+	 * @throws IllegalArgumentException when the arrays do not have the same length
+	 */
+	public GradeProjection (final double constant, final double[] coefficients, final Distribution[] distributions) {
+		if (coefficients.length != distributions.length)
+			throw new IllegalArgumentException(EXCEPTION_INVALID_DISTRIBUTIONS);
+		this.constant = constant;
+		this.coefficients = coefficients.clone();
+		types = new int[distributions.length];
+		firsts = new double[distributions.length];
+		seconds = new double[distributions.length];
+		pools = new double[distributions.length][];
+		for (int i = 0; i < distributions.length; i++) {
+			types[i] = distributions[i].type;
+			firsts[i] = distributions[i].first;
+			seconds[i] = distributions[i].second;
+			pools[i] = distributions[i].values;
+		}
+	}
+
+	/**
+	 * Creates a projection for the grades of the calculator which are not set
+	 *
+	 * @param calculator    The calculator
+	 * @param distributions The distribution of every grade of the calculator, with the same index. Grades which are set are not simulated, and a grade which is not set
+	 *                      and has no distribution stays not set
+	 * @return The projection
+	 * @throws IllegalArgumentException when the array does not have a distribution for every grade
+	 */
+	public static GradeProjection create (final CompiledCalculator calculator, final Distribution[] distributions) {
+		if (distributions.length != calculator.getSize())
+			throw new IllegalArgumentException(EXCEPTION_INVALID_DISTRIBUTIONS);
+		final boolean[] set = new boolean[distributions.length];
+		for (int i = 0; i < set.length; i++)
+			set[i] = calculator.hasValue(i);
+
+		final int[] unknowns = getUnknowns(set, distributions);
+		final double[] coefficients = new double[unknowns.length];
+		final double constant = calculator.linearise(unknowns, coefficients);
+		return new GradeProjection(constant, coefficients, select(distributions, unknowns));
+	}
+
+	/**
+	 * Creates a projection for the leaves of the formula which are not set
+	 *
+	 * @param formula       The flattened formula
+	 * @param distributions The distribution of every leaf, with the same index. Leaves which are set are not simulated, and a leaf which is not set and has no
+	 *                      distribution stays not set
+	 * @return The projection
+	 * @throws IllegalArgumentException when the array does not have a distribution for every leaf
+	 */
+	public static GradeProjection create (final FlatFormula formula, final Distribution[] distributions) {
+		if (distributions.length != formula.getSize())
+			throw new IllegalArgumentException(EXCEPTION_INVALID_DISTRIBUTIONS);
+		final boolean[] set = new boolean[distributions.length];
+		for (int i = 0; i < set.length; i++)
+			set[i] = formula.getLeaf(i).hasValue();
+
+		final int[] unknowns = getUnknowns(set, distributions);
+		final double[] coefficients = new double[unknowns.length];
+		final double constant = formula.linearise(unknowns, coefficients);
+		return new GradeProjection(constant, coefficients, select(distributions, unknowns));
+	}
+
+	private static int[] getUnknowns (final boolean[] set, final Distribution[] distributions) {
+		int count = 0;
+		for (int i = 0; i < set.length; i++)
+			if (!set[i] && distributions[i] != null)
+				count++;
+
+		final int[] unknowns = new int[count];
+		count = 0;
+		for (int i = 0; i < set.length; i++)
+			if (!set[i] && distributions[i] != null)
+				unknowns[count++] = i;
+		return unknowns;
+	}
+
+	private static Distribution[] select (final Distribution[] distributions, final int[] indices) {
+		final Distribution[] selected = new Distribution[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			selected[i] = distributions[indices[i]];
+		return selected;
+	}
+
+	/**
+	 * Sets the scale of the grades, which is also the range of the histogram
+	 *
+	 * @param lowest  The lowest grade
+	 * @param highest The highest grade
+	 * @return This projection
+	 * @throws IllegalArgumentException when the lowest grade is not lower than the highest
+	 */
+	public GradeProjection setScale (final double lowest, final double highest) {
+		if (!(lowest < highest))
+			throw new IllegalArgumentException(EXCEPTION_INVALID_SCALE);
+		this.lowest = lowest;
+		this.highest = highest;
+		return this;
+	}
+
+	/**
+	 * Simulates the outcomes on the shared executor of {@link RosterEvaluator}, with a histogram of {@link #DEFAULT_BINS} bins
+	 *
+	 * @param samples     The amount of outcomes to simulate
+	 * @param passAverage The lowest average which passes
+	 * @param seed        The seed of the random generators
+	 * @return The projection
+	 */
+	public Result project (final long samples, final double passAverage, final long seed) {
+		return project(samples, passAverage, DEFAULT_BINS, seed, RosterEvaluator.getSharedExecutor());
+	}
+
+	/**
+	 * Simulates the outcomes
+	 *
+	 * @param samples     The amount of outcomes to simulate
+	 * @param passAverage The lowest average which passes
+	 * @param bins        The amount of bins of the histogram, which covers the scale
+	 * @param seed        The seed of the random generators
+	 * @param executor    The executor to run the tasks on, or null to run them on this thread
+	 * @return The projection
+	 * @throws SyntaxException when the amount of samples is negative or there are no bins
+	 */
+	public Result project (final long samples, final double passAverage, final int bins, final long seed, final ExecutorService executor) {
+		if (samples < 0 || bins <= 0)
+			throw new SyntaxException(FORMAT_INVALID_PROJECTION, samples, bins);
+		final double lowest = this.lowest;
+		final double highest = this.highest;
+
+		// Split off the generators up front, so every task always gets the same generator
+		final int tasks = (int) ((samples + TASK_SAMPLES - 1) / TASK_SAMPLES);
+		final SplitMix root = new SplitMix(seed);
+		final long[][] histograms = new long[tasks][];
+		final long[] passes = new long[tasks];
+		final double[] totals = new double[tasks];
+		final List<Callable<Void>> callables = new ArrayList<>(tasks);
+		for (int task = 0; task < tasks; task++) {
+			final int index = task;
+			final int count = (int) Math.min(TASK_SAMPLES, samples - (long) task * TASK_SAMPLES);
+			final SplitMix random = root.split();
+			callables.add(new Callable<Void>() {
+				@Override
+				public Void call () {
+					final long[] histogram = new long[bins];
+					passes[index] = simulate(random, count, passAverage, lowest, highest, histogram, totals, index);
+					histograms[index] = histogram;
+					return null;
+				}
+			});
+		}
+		run(executor, callables);
+
+		// Merge in the order of the tasks, so the sum is the same every time
+		final long[] histogram = new long[bins];
+		long passed = 0L;
+		double total = 0D;
+		for (int task = 0; task < tasks; task++) {
+			for (int bin = 0; bin < bins; bin++)
+				histogram[bin] += histograms[task][bin];
+			passed += passes[task];
+			total += totals[task];
+		}
+		return new Result(samples, passed, samples == 0 ? 0D : total / samples, lowest, highest, histogram);
+	}
+
+	/**
+	 * Simulates the outcomes of one task
+	 *
+	 * @return The amount of outcomes which passed
+	 */
+	private long simulate (final SplitMix random, final int count, final double passAverage, final double lowest, final double highest, final long[] histogram,
+	                       final double[] totals, final int index) {
+		final int bins = histogram.length;
+		final double binScale = bins / (highest - lowest);
+		long passed = 0L;
+		double total = 0D;
+		for (int sample = 0; sample < count; sample++) {
+			double average = constant;
+			for (int i = 0; i < coefficients.length; i++) {
+				double value;
+				switch (types[i]) {
+					case TYPE_FIXED:
+						value = firsts[i];
+						break;
+					case TYPE_UNIFORM:
+						value = firsts[i] + seconds[i] * random.nextDouble();
+						break;
+					case TYPE_NORMAL:
+						value = firsts[i] + seconds[i] * random.nextGaussian();
+						break;
+					default:
+						final double[] pool = pools[i];
+						value = pool[(int) (random.nextDouble() * pool.length)];
+						break;
+				}
+				if (value < lowest)
+					value = lowest;
+				else if (value > highest)
+					value = highest;
+				average += coefficients[i] * value;
+			}
+
+			if (average >= passAverage)
+				passed++;
+			total += average;
+			int bin = (int) ((average - lowest) * binScale);
+			if (bin < 0)
+				bin = 0;
+			else if (bin >= bins)
+				bin = bins - 1;
+			histogram[bin]++;
+		}
+		totals[index] = total;
+		return passed;
+	}
+
+	/**
+	 * Runs all tasks on the executor and waits until they are finished
+	 *
+	 * @param executor  The executor, or null to run the tasks on this thread
+	 * @param callables The tasks
+	 */
+	private static void run (final ExecutorService executor, final List<Callable<Void>> callables) {
+		if (executor == null || callables.size() <= 1) {
+			try {
+				for (final Callable<Void> callable : callables)
+					callable.call();
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+			return;
+		}
+
+		final List<Future<Void>> futures = new ArrayList<>(callables.size());
+		for (final Callable<Void> callable : callables)
+			futures.add(executor.submit(callable));
+
+		try {
+			for (final Future<Void> future : futures)
+				future.get();
+		} catch (final InterruptedException e) {
+			for (final Future<Void> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+/**
+ * The value a grade needs for a given average, while all other grades keep their current value. That value is a linear function of the average:
+ * <pre>value = slope * average + intercept</pre>
+ * So once the slope and intercept are known (see {@link com.grademanager.parser.grade.Calculator#createSolver(Grade)}), any number of averages can be answered without
+ * looking at the grades again. A solver is a snapshot: when a grade changes, a new solver has to be created.<br/>
+ * Some formulas are not linear in a grade, like the aggregate functions of {@link com.grademanager.parser.grade.AggregateCalculator}. Their solvers override {@link
+ * #solve(double)}, {@link #isLinear()} returns false and the slope and intercept are NaN.
+ *
+ * @author Wesley A
+ */
+public class GradeSolver {
+
+	// Constants which are used within this class only
+	private static final String FORMAT_INVALID_RANGE = "Invalid range: %d values from offset %d and %d, arrays have %d and %d values";
+
+	/**
+	 * The solver which returns the average itself
+	 */
+	public static final GradeSolver IDENTITY = new GradeSolver(1D, 0D);
+
+	/**
+	 * How much the value changes per point of the average
+	 */
+	public final double slope;
+
+	/**
+	 * The value for an average of 0
+	 */
+	public final double intercept;
+
+	/**
+	 * Creates a solver
+	 *
+	 * @param slope     How much the value changes per point of the average
+	 * @param intercept The value for an average of 0
+	 */
+	public GradeSolver (final double slope, final double intercept) {
+		this.slope = slope;
+		this.intercept = intercept;
+	}
+
+	/**
+	 * Creates the solver of a grade in a calculator
+	 *
+	 * @param weighting      The weighting of the grade
+	 * @param total          The total of the other set grades, multiplied with their weighting
+	 * @param totalWeighting The total weighting of the other set grades
+	 * @return The solver
+	 */
+	static GradeSolver create (final int weighting, final double total, final long totalWeighting) {
+		return new GradeSolver((double) (totalWeighting + weighting) / weighting, -total / weighting);
+	}
+
+	/**
+	 * Calculates the value the grade needs
+	 *
+	 * @param average The average to achieve
+	 * @return The value of the grade
+	 */
+	public double solve (final double average) {
+		return slope * average + intercept;
+	}
+
+	/**
+	 * Calculates the values the grade needs for all averages
+	 *
+	 * @param averages The averages to achieve
+	 * @param results  The array to write the values in, at the same index as the average
+	 * @throws IllegalArgumentException when the results array is shorter than the averages array
+	 */
+	public void solve (final double[] averages, final double[] results) {
+		solve(averages, 0, results, 0, averages.length);
+	}
+
+	/**
+	 * Calculates the values the grade needs for a range of averages
+	 *
+	 * @param averages      The averages to achieve
+	 * @param averageOffset The index of the first average
+	 * @param results       The array to write the values in
+	 * @param resultOffset  The index to write the first value at
+	 * @param length        The amount of averages
+	 * @throws IllegalArgumentException when a range does not fit in its array
+	 */
+	public void solve (final double[] averages, final int averageOffset, final double[] results, final int resultOffset, final int length) {
+		if (length < 0 || averageOffset < 0 || resultOffset < 0 || averages.length - averageOffset < length || results.length - resultOffset < length)
+			throw new IllegalArgumentException(String.format(FORMAT_INVALID_RANGE, length, averageOffset, resultOffset, averages.length, results.length));
+		if (isLinear()) {
+			for (int i = 0; i < length; i++)
+				results[resultOffset + i] = slope * averages[averageOffset + i] + intercept;
+		} else {
+			for (int i = 0; i < length; i++)
+				results[resultOffset + i] = solve(averages[averageOffset + i]);
+		}
+	}
+
+	/**
+	 * Checks if this solver is the linear function of {@link #slope} and {@link #intercept}
+	 *
+	 * @return true when it is, false when {@link #solve(double)} calculates the value in another way
+	 */
+	public boolean isLinear () {
+		return true;
+	}
+
+	/**
+	 * Combines this solver with the solver of the next level. This is used when the grade is inside another grade: this solver gives the value of the outer grade, which
+	 * is the average the next solver needs.
+	 *
+	 * @param next The solver which takes the value of this solver as average
+	 * @return A solver which does both at once
+	 */
+	public GradeSolver then (final GradeSolver next) {
+		if (isLinear() && next.isLinear())
+			return new GradeSolver(next.slope * slope, next.slope * intercept + next.intercept);
+		return new ChainedSolver(this, next);
+	}
+
+	/**
+	 * Two solvers after each other, when one of them is not linear
+	 */
+	private static final class ChainedSolver extends GradeSolver {
+
+		private final GradeSolver first;
+
+		private final GradeSolver next;
+
+		private ChainedSolver (final GradeSolver first, final GradeSolver next) {
+			super(Double.NaN, Double.NaN);
+			this.first = first;
+			this.next = next;
+		}
+
+		@Override
+		public double solve (final double average) {
+			return next.solve(first.solve(average));
+		}
+
+		@Override
+		public boolean isLinear () {
+			return false;
+		}
+	}
+}
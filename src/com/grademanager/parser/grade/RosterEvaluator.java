@@ -0,0 +1,332 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Calculates a {@link com.grademanager.parser.grade.Formula} for many rows (for instance all students of a school) at once. Instead of a calculator with its own grades per
+ * row, the values are stored per grade in one column-major array, and whether a value is set is stored in a bitmap per grade. The calculation loops over the columns, so
+ * every grade is handled for a whole block of rows before the next one.<br/>
+ * Large rosters are split into blocks of {@link #BLOCK_ROWS} rows which are calculated on an {@link java.util.concurrent.ExecutorService}, so the work is spread over all
+ * cores.
+ *
+ * @author Wesley A
+ */
+public class RosterEvaluator {
+
+	/**
+	 * The amount of rows calculated by one task, this is a multiple of 64 so a task uses whole words of the bitmaps
+	 */
+	public static final int BLOCK_ROWS = 4096;
+
+	// Constants which are used within this class only
+	private static final String FORMAT_INVALID_CELL = "Invalid cell %d, %d";
+
+	private static final String FORMAT_INVALID_COLUMN = "Invalid column %d";
+
+	private static final String EXCEPTION_INVALID_ARRAYS = "The arrays do not have the size of the roster";
+
+	private static final String STRING_THREAD_NAME = "RosterEvaluator";
+
+	/**
+	 * The executor which is shared by all evaluators, created when it is needed for the first time
+	 */
+	private static ExecutorService sharedExecutor;
+
+	/**
+	 * The formula which is calculated for every row
+	 */
+	public final Formula formula;
+
+	/**
+	 * The amount of rows
+	 */
+	public final int rows;
+
+	/**
+	 * The amount of words in the bitmap of a column
+	 */
+	private final int words;
+
+	/**
+	 * The values, column-major: the value of a row in a column is at column * rows + row. A value is only valid when it is set in {@link #present}
+	 */
+	final double[] values;
+
+	/**
+	 * The bitmaps of set values, one after another: the row in a column is bit (row % 64) of word column * words + row / 64
+	 */
+	final long[] present;
+
+	/**
+	 * Creates an evaluator where none of the values is set
+	 *
+	 * @param formula The formula to calculate
+	 * @param rows    The amount of rows
+	 */
+	public RosterEvaluator (final Formula formula, final int rows) {
+		this(formula, rows, new double[formula.getSize() * rows], new long[formula.getSize() * ((rows + 63) >>> 6)]);
+	}
+
+	/**
+	 * Creates an evaluator which uses the given arrays directly, so changes in them are seen by this evaluator
+	 *
+	 * @param formula The formula to calculate
+	 * @param rows    The amount of rows
+	 * @param values  The values in column-major order, see {@link #values}
+	 * @param present The bitmaps of set values, see {@link #present}
+	 * @throws IllegalArgumentException when the arrays do not have the right length
+	 */
+	public RosterEvaluator (final Formula formula, final int rows, final double[] values, final long[] present) {
+		final int words = (rows + 63) >>> 6;
+		if (rows < 0 || values.length != formula.getSize() * rows || present.length != formula.getSize() * words)
+			throw new IllegalArgumentException(EXCEPTION_INVALID_ARRAYS);
+		this.formula = formula;
+		this.rows = rows;
+		this.words = words;
+		this.values = values;
+		this.present = present;
+	}
+
+	/**
+	 * Creates an evaluator from a row-major matrix, where NaN means that the value is not set
+	 *
+	 * @param formula The formula to calculate
+	 * @param matrix  The values of every row, with a column for every grade of the formula
+	 * @return The evaluator
+	 * @throws SyntaxException when a row does not have a value for every grade
+	 */
+	public static RosterEvaluator of (final Formula formula, final double[][] matrix) {
+		final RosterEvaluator evaluator = new RosterEvaluator(formula, matrix.length);
+		final int columns = formula.getSize();
+		for (int row = 0; row < matrix.length; row++) {
+			if (matrix[row].length != columns)
+				throw new SyntaxException(FORMAT_INVALID_CELL, row, matrix[row].length);
+			for (int column = 0; column < columns; column++)
+				if (!Double.isNaN(matrix[row][column]))
+					evaluator.setValue(row, column, matrix[row][column]);
+		}
+		return evaluator;
+	}
+
+	/**
+	 * Returns the executor which is shared by all evaluators, with a daemon thread for every processor
+	 *
+	 * @return The shared executor
+	 */
+	public static synchronized ExecutorService getSharedExecutor () {
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				@Override
+				public Thread newThread (final Runnable runnable) {
+					final Thread thread = new Thread(runnable, STRING_THREAD_NAME);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Checks if the value in the cell is set
+	 *
+	 * @param row    The row
+	 * @param column The column, which is the index of the grade in the formula
+	 * @return Whether the cell has a value
+	 */
+	public boolean hasValue (final int row, final int column) {
+		checkCell(row, column);
+		return (present[column * words + (row >>> 6)] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the value in the cell
+	 *
+	 * @param row    The row
+	 * @param column The column, which is the index of the grade in the formula
+	 * @return The value, or 0 when it is not set
+	 */
+	public double getValue (final int row, final int column) {
+		return hasValue(row, column) ? values[column * rows + row] : 0D;
+	}
+
+	/**
+	 * Sets the value in the cell
+	 *
+	 * @param row    The row
+	 * @param column The column, which is the index of the grade in the formula
+	 * @param value  The value to set to
+	 */
+	public void setValue (final int row, final int column, final double value) {
+		checkCell(row, column);
+		values[column * rows + row] = value;
+		present[column * words + (row >>> 6)] |= 1L << row;
+	}
+
+	/**
+	 * Resets the value in the cell (it is not set after calling this)
+	 *
+	 * @param row    The row
+	 * @param column The column, which is the index of the grade in the formula
+	 */
+	public void reset (final int row, final int column) {
+		checkCell(row, column);
+		present[column * words + (row >>> 6)] &= ~(1L << row);
+	}
+
+	/**
+	 * Calculates the average of every row on the {@link #getSharedExecutor() shared executor}
+	 *
+	 * @return The averages, with 0 for a row without set values
+	 */
+	public double[] calculateAverages () {
+		return calculateAverages(rows > BLOCK_ROWS ? getSharedExecutor() : null);
+	}
+
+	/**
+	 * Calculates the average of every row
+	 *
+	 * @param executor The executor to calculate the blocks of rows on, or null to calculate them on the current thread
+	 * @return The averages, with 0 for a row without set values
+	 */
+	public double[] calculateAverages (final ExecutorService executor) {
+		final double[] averages = new double[rows];
+		run(executor, -1, 0D, averages);
+		return averages;
+	}
+
+	/**
+	 * Calculates the value of the grade in the column for every row to get the given average, like {@link Calculator#calculateGrade(Grade, double)} does. This uses the
+	 * {@link #getSharedExecutor() shared executor}.
+	 *
+	 * @param column  The column of the grade to calculate
+	 * @param average The average to achieve
+	 * @return The value of the grade for every row
+	 * @throws SyntaxException when the column is not valid
+	 */
+	public double[] calculateGrades (final int column, final double average) {
+		return calculateGrades(column, average, rows > BLOCK_ROWS ? getSharedExecutor() : null);
+	}
+
+	/**
+	 * Calculates the value of the grade in the column for every row to get the given average, like {@link Calculator#calculateGrade(Grade, double)} does
+	 *
+	 * @param column   The column of the grade to calculate
+	 * @param average  The average to achieve
+	 * @param executor The executor to calculate the blocks of rows on, or null to calculate them on the current thread
+	 * @return The value of the grade for every row
+	 * @throws SyntaxException when the column is not valid
+	 */
+	public double[] calculateGrades (final int column, final double average, final ExecutorService executor) {
+		if (column < 0 || column >= formula.getSize())
+			throw new SyntaxException(FORMAT_INVALID_COLUMN, column);
+		final double[] grades = new double[rows];
+		run(executor, column, average, grades);
+		return grades;
+	}
+
+	/**
+	 * Calculates all blocks of rows, on the executor when there is more than one block
+	 *
+	 * @param executor The executor, or null
+	 * @param column   The column to calculate the grade of, or -1 to calculate the averages
+	 * @param average  The average to achieve when a grade is calculated
+	 * @param results  The array to write the results to
+	 */
+	private void run (final ExecutorService executor, final int column, final double average, final double[] results) {
+		if (executor == null || rows <= BLOCK_ROWS) {
+			calculateBlock(0, rows, column, average, results);
+			return;
+		}
+
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int from = 0; from < rows; from += BLOCK_ROWS) {
+			final int start = from;
+			final int end = Math.min(rows, from + BLOCK_ROWS);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call () {
+					calculateBlock(start, end, column, average, results);
+					return null;
+				}
+			}));
+		}
+
+		try {
+			for (final Future<Void> future : futures)
+				future.get();
+		} catch (final InterruptedException e) {
+			for (final Future<Void> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Calculates the rows from start (inclusive) to end (exclusive). The start is a multiple of 64, so only the words of this block are touched.
+	 *
+	 * @param start   The first row
+	 * @param end     The row after the last row
+	 * @param column  The column to calculate the grade of, or -1 to calculate the averages
+	 * @param average The average to achieve when a grade is calculated
+	 * @param results The array to write the results to
+	 */
+	private void calculateBlock (final int start, final int end, final int column, final double average, final double[] results) {
+		final int size = end - start;
+		final double[] totals = new double[size];
+		final long[] totalWeightings = new long[size];
+
+		// Add one column at a time to all rows of the block, words of the bitmap which are full run without bit tests
+		for (int j = 0; j < formula.getSize(); j++) {
+			if (j != column)
+				GradeKernels.accumulate(values, j * rows, formula.getWeighting(j), present, j * words, start, end, totals, totalWeightings);
+		}
+
+		if (column < 0) {
+			for (int i = 0; i < size; i++)
+				results[start + i] = totalWeightings[i] != 0 ? totals[i] / totalWeightings[i] : 0D;
+		} else {
+			final int weighting = formula.getWeighting(column);
+			for (int i = 0; i < size; i++)
+				results[start + i] = (average * (totalWeightings[i] + weighting) - totals[i]) / weighting;
+		}
+	}
+
+	/**
+	 * Checks if the cell is within the roster
+	 *
+	 * @param row    The row
+	 * @param column The column
+	 * @throws SyntaxException when it is not
+	 */
+	private void checkCell (final int row, final int column) {
+		if (row < 0 || row >= rows || column < 0 || column >= formula.getSize())
+			throw new SyntaxException(FORMAT_INVALID_CELL, row, column);
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A {@link com.grademanager.parser.grade.Calculator} which keeps the weighted total and the total weighting of the set grades up to date while they change. It is the
+ * {@link com.grademanager.parser.grade.Grade.Listener} of all of its grades, so every {@link com.grademanager.parser.grade.Grade#setValue(double)} and {@link
+ * com.grademanager.parser.grade.Grade#reset()} updates the totals in constant time, and {@link #calculateAverage()} only has to divide them.<br/>
+ * A grade which is replaced through {@link java.util.List#set(int, Object)} on {@link #grades} is picked up as well. When a grade is a calculator of its own, it should
+ * call {@link com.grademanager.parser.grade.Grade#notifyChanged(boolean, double)} when its value changes, which can be done with a {@link Listener} on that calculator.<br/>
+ * This class is not thread-safe, just like {@link com.grademanager.parser.grade.Grade}.
+ *
+ * @author Wesley A
+ */
+public class RunningCalculator extends Calculator implements Grade.Listener {
+
+	// Constants which are used within this class only
+	private static final int UPDATES_PER_RECALCULATION = 1024;
+
+	/**
+	 * Gets notified when the average of a calculator changes
+	 *
+	 * @author Wesley A
+	 */
+	public static interface Listener {
+
+		/**
+		 * Called after the average of the calculator has changed
+		 *
+		 * @param calculator The calculator which changed
+		 * @param wasSet     Whether any grade was set before the change
+		 * @param oldAverage The average before the change
+		 */
+		void onAverageChanged (RunningCalculator calculator, boolean wasSet, double oldAverage);
+
+		/**
+		 * Called after a grade of the calculator, or of a calculator below it, has been replaced
+		 *
+		 * @param calculator The calculator which changed
+		 */
+		void onStructureChanged (RunningCalculator calculator);
+	}
+
+	/**
+	 * The list of {@link #grades}, which registers the calculator as listener of a grade when it is set
+	 *
+	 * @author Wesley A
+	 */
+	private static final class GradeList extends AbstractList<Grade> implements RandomAccess {
+
+		private final Grade[] grades;
+
+		private RunningCalculator owner;
+
+		private GradeList (final Grade[] grades) {
+			this.grades = grades;
+		}
+
+		@Override
+		public Grade get (final int index) {
+			return grades[index];
+		}
+
+		@Override
+		public Grade set (final int index, final Grade grade) {
+			final Grade previous = grades[index];
+			grades[index] = grade;
+			owner.replace(previous, grade);
+			return previous;
+		}
+
+		@Override
+		public int size () {
+			return grades.length;
+		}
+	}
+
+	/**
+	 * The total of all set grades multiplied with their weighting
+	 */
+	private double total = 0D;
+
+	/**
+	 * The total weighting of all set grades
+	 */
+	private long totalWeighting = 0L;
+
+	/**
+	 * The amount of set grades
+	 */
+	private int setCount = 0;
+
+	/**
+	 * The amount of changes since the totals were calculated from scratch
+	 */
+	private int updates = 0;
+
+	/**
+	 * The listener which gets notified when the average changes
+	 */
+	private Listener listener;
+
+	/**
+	 * Creates a new object using the given grades, this becomes the listener of all of them
+	 *
+	 * @param grades The grades to use
+	 */
+	public RunningCalculator (final Grade[] grades) {
+		super(new GradeList(grades));
+		((GradeList) this.grades).owner = this;
+		for (final Grade grade : grades)
+			grade.setListener(this);
+		recalculate();
+	}
+
+	/**
+	 * Sets the listener which gets notified when the average of this calculator changes
+	 *
+	 * @param listener The listener, or null to remove it
+	 */
+	public void setListener (final Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the listener of this calculator
+	 *
+	 * @return The listener or null when there is none
+	 */
+	public Listener getListener () {
+		return listener;
+	}
+
+	/**
+	 * Calculates the totals again from all grades. This is only needed when a grade changes without notifying this calculator.
+	 */
+	public void recalculate () {
+		final boolean wasSet = hasValue();
+		final double oldAverage = calculateAverage();
+		sum();
+		notifyChanged(wasSet, oldAverage);
+	}
+
+	/**
+	 * Calculates the totals from scratch, without notifying the listener
+	 */
+	private void sum () {
+		total = 0D;
+		totalWeighting = 0L;
+		setCount = 0;
+		updates = 0;
+		for (final Grade grade : grades) {
+			if (grade.hasValue()) {
+				total += grade.getValue() * grade.weighting;
+				totalWeighting += grade.weighting;
+				setCount++;
+			}
+		}
+	}
+
+	/**
+	 * Replaces a grade in {@link #grades}
+	 *
+	 * @param previous The grade which has been replaced
+	 * @param grade    The new grade
+	 */
+	private void replace (final Grade previous, final Grade grade) {
+		if (previous != grade) {
+			if (previous.getListener() == this)
+				previous.setListener(null);
+			grade.setListener(this);
+		}
+		recalculate();
+		notifyStructureChanged();
+	}
+
+	/**
+	 * Tells this calculator and its listener that a grade has been replaced, in this calculator or in a calculator below it. Grades which are a calculator of their own
+	 * should call this on the calculator they are in when they get other sub-grades.
+	 */
+	public void notifyStructureChanged () {
+		onStructureChanged();
+		if (listener != null)
+			listener.onStructureChanged(this);
+	}
+
+	/**
+	 * Called by {@link #notifyStructureChanged()}, for subclasses which keep information about the grades
+	 */
+	protected void onStructureChanged () {
+	}
+
+	@Override
+	public void onGradeChanged (final Grade grade, final boolean wasSet, final double oldValue) {
+		final boolean wasCalculatorSet = hasValue();
+		final double oldAverage = calculateAverage();
+
+		if (wasSet) {
+			total -= oldValue * grade.weighting;
+			totalWeighting -= grade.weighting;
+			setCount--;
+		}
+		if (grade.hasValue()) {
+			total += grade.getValue() * grade.weighting;
+			totalWeighting += grade.weighting;
+			setCount++;
+		}
+		// Start from an exact total again once in a while, so rounding errors of the subtractions do not pile up
+		if (setCount == 0) {
+			total = 0D;
+			updates = 0;
+		} else if (++updates == UPDATES_PER_RECALCULATION) {
+			sum();
+		}
+
+		notifyChanged(wasCalculatorSet, oldAverage);
+	}
+
+	/**
+	 * Notifies the {@link #listener} when the average actually changed
+	 */
+	private void notifyChanged (final boolean wasSet, final double oldAverage) {
+		if (listener != null && (wasSet != hasValue() || oldAverage != calculateAverage()))
+			listener.onAverageChanged(this, wasSet, oldAverage);
+	}
+
+	/**
+	 * Checks if any of the grades is set
+	 *
+	 * @return Whether a grade has a value
+	 */
+	public boolean hasValue () {
+		return setCount != 0;
+	}
+
+	@Override
+	public GradeSolver createSolver (final Grade gradeToCalculate) {
+		// The totals are known already, only the part of the grade itself has to be left out
+		if (gradeToCalculate != null && gradeToCalculate.getListener() == this) {
+			if (gradeToCalculate.hasValue())
+				return GradeSolver.create(gradeToCalculate.weighting, total - gradeToCalculate.getValue() * gradeToCalculate.weighting,
+						totalWeighting - gradeToCalculate.weighting);
+			return GradeSolver.create(gradeToCalculate.weighting, total, totalWeighting);
+		}
+		return super.createSolver(gradeToCalculate);
+	}
+
+	@Override
+	public double calculateAverage () {
+		if (totalWeighting != 0)
+			return total / totalWeighting;
+		return 0.0D;
+	}
+
+	@Override
+	public RunningCalculator clone () {
+		final Grade[] grades = new Grade[this.grades.size()];
+		for (int i = 0; i < grades.length; i++)
+			grades[i] = this.grades.get(i).clone();
+		return new RunningCalculator(grades);
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade.util;
+
+import java.math.BigInteger;
+
+/**
+ * An immutable fraction of two integers which is always in its smallest form (for instance 8/24 is stored as 1/3) and always has a positive denominator.<br/>
+ * The numerator and denominator are stored as longs. When an operation would overflow a long, the result is stored as a {@link java.math.BigInteger} pair instead, so the
+ * arithmetic is always exact. Reducing is done with the binary GCD algorithm, which takes time proportional to the number of bits instead of the value.<br/>
+ * Small fractions (numerator and denominator up to {@link #CACHE_LIMIT}) are shared instances, so the common weightings of an expression do not allocate.
+ *
+ * @author Wesley A
+ */
+public final class Rational implements Comparable<Rational> {
+
+	// Constants which are used within this class only
+	private static final int CACHE_LIMIT = 64;
+
+	private static final String EXCEPTION_DIVIDE_BY_ZERO = "Cannot divide by 0";
+
+	private static final String EXCEPTION_TOO_LARGE = "Value does not fit in a long";
+
+	private static final char CHAR_SLASH_FORWARD = '/';
+
+	/**
+	 * The shared small fractions, index [numerator][denominator - 1]. Only reduced fractions are looked up here
+	 */
+	private static final Rational[][] CACHE = new Rational[CACHE_LIMIT + 1][CACHE_LIMIT];
+
+	static {
+		for (int numerator = 0; numerator <= CACHE_LIMIT; numerator++) {
+			for (int denominator = 1; denominator <= CACHE_LIMIT; denominator++) {
+				final long gcd = gcd(numerator, denominator);
+				if (gcd == 1) {
+					CACHE[numerator][denominator - 1] = new Rational(numerator, denominator, null, null);
+				} else {
+					// Reduced form of this fraction has been created already, since its numerator and denominator are smaller
+					CACHE[numerator][denominator - 1] = CACHE[(int) (numerator / gcd)][(int) (denominator / gcd) - 1];
+				}
+			}
+		}
+	}
+
+	/**
+	 * The fraction 0/1
+	 */
+	public static final Rational ZERO = CACHE[0][0];
+
+	/**
+	 * The fraction 1/1
+	 */
+	public static final Rational ONE = CACHE[1][0];
+
+	/**
+	 * The numerator, only valid when {@link #bigNumerator} is null
+	 */
+	private final long numerator;
+
+	/**
+	 * The denominator, only valid when {@link #bigNumerator} is null
+	 */
+	private final long denominator;
+
+	/**
+	 * The numerator when it does not fit in a long, otherwise null
+	 */
+	private final BigInteger bigNumerator;
+
+	/**
+	 * The denominator when the numerator or denominator does not fit in a long, otherwise null
+	 */
+	private final BigInteger bigDenominator;
+
+	/**
+	 * Creates a fraction, the values must be reduced already
+	 */
+	private Rational (final long numerator, final long denominator, final BigInteger bigNumerator, final BigInteger bigDenominator) {
+		this.numerator = numerator;
+		this.denominator = denominator;
+		this.bigNumerator = bigNumerator;
+		this.bigDenominator = bigDenominator;
+	}
+
+	/**
+	 * Returns the fraction n/1
+	 *
+	 * @param n The numerator
+	 * @return The fraction
+	 */
+	public static Rational valueOf (final long n) {
+		return valueOf(n, 1L);
+	}
+
+	/**
+	 * Returns the smallest form of the fraction numerator/denominator
+	 *
+	 * @param numerator   The numerator
+	 * @param denominator The denominator
+	 * @return The fraction
+	 * @throws ArithmeticException when the denominator is 0
+	 */
+	public static Rational valueOf (long numerator, long denominator) {
+		if (denominator == 0)
+			throw new ArithmeticException(EXCEPTION_DIVIDE_BY_ZERO);
+		if (numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE)
+			return valueOf(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+
+		if (denominator < 0) {
+			numerator = -numerator;
+			denominator = -denominator;
+		}
+		final long gcd = gcd(Math.abs(numerator), denominator);
+		if (gcd > 1) {
+			numerator /= gcd;
+			denominator /= gcd;
+		}
+
+		if (numerator >= 0 && numerator <= CACHE_LIMIT && denominator <= CACHE_LIMIT)
+			return CACHE[(int) numerator][(int) denominator - 1];
+		return new Rational(numerator, denominator, null, null);
+	}
+
+	/**
+	 * Returns the smallest form of the fraction numerator/denominator. When it fits in longs, the long form is used
+	 *
+	 * @param numerator   The numerator
+	 * @param denominator The denominator
+	 * @return The fraction
+	 * @throws ArithmeticException when the denominator is 0
+	 */
+	public static Rational valueOf (BigInteger numerator, BigInteger denominator) {
+		if (denominator.signum() == 0)
+			throw new ArithmeticException(EXCEPTION_DIVIDE_BY_ZERO);
+		if (denominator.signum() < 0) {
+			numerator = numerator.negate();
+			denominator = denominator.negate();
+		}
+		final BigInteger gcd = numerator.gcd(denominator);
+		if (!gcd.equals(BigInteger.ONE)) {
+			numerator = numerator.divide(gcd);
+			denominator = denominator.divide(gcd);
+		}
+
+		// Long.MIN_VALUE is never stored as a long, since it cannot be negated
+		if (numerator.bitLength() < Long.SIZE && numerator.longValue() != Long.MIN_VALUE && denominator.bitLength() < Long.SIZE)
+			return valueOf(numerator.longValue(), denominator.longValue());
+		return new Rational(0L, 0L, numerator, denominator);
+	}
+
+	/**
+	 * Calculates the greatest common divisor with the binary GCD algorithm
+	 *
+	 * @param a A value which is 0 or greater
+	 * @param b A value which is 0 or greater
+	 * @return The greatest common divisor, or the other value when one of them is 0
+	 */
+	public static long gcd (long a, long b) {
+		if (a == 0)
+			return b;
+		if (b == 0)
+			return a;
+
+		// The common factors of 2 are counted once, the rest only works with odd numbers
+		final int shift = Long.numberOfTrailingZeros(a | b);
+		a >>>= Long.numberOfTrailingZeros(a);
+		do {
+			b >>>= Long.numberOfTrailingZeros(b);
+			if (a > b) {
+				final long temp = a;
+				a = b;
+				b = temp;
+			}
+			b -= a;
+		} while (b != 0);
+		return a << shift;
+	}
+
+	/**
+	 * Adds two longs
+	 *
+	 * @throws ArithmeticException when the result overflows
+	 */
+	private static long addExact (final long a, final long b) {
+		final long result = a + b;
+		if (((a ^ result) & (b ^ result)) < 0)
+			throw new ArithmeticException();
+		return result;
+	}
+
+	/**
+	 * Multiplies two longs
+	 *
+	 * @throws ArithmeticException when the result overflows
+	 */
+	private static long multiplyExact (final long a, final long b) {
+		final long result = a * b;
+		if (((Math.abs(a) | Math.abs(b)) >>> 31) != 0) {
+			if ((b != 0 && result / b != a) || (a == Long.MIN_VALUE && b == -1))
+				throw new ArithmeticException();
+		}
+		return result;
+	}
+
+	/**
+	 * Checks whether the numerator and denominator fit in longs
+	 *
+	 * @return Whether {@link #getNumerator()} and {@link #getDenominator()} can be used
+	 */
+	public boolean isLong () {
+		return bigNumerator == null;
+	}
+
+	/**
+	 * Returns the numerator
+	 *
+	 * @return The numerator
+	 * @throws ArithmeticException when it does not fit in a long, see {@link #isLong()}
+	 */
+	public long getNumerator () {
+		if (bigNumerator != null)
+			throw new ArithmeticException(EXCEPTION_TOO_LARGE);
+		return numerator;
+	}
+
+	/**
+	 * Returns the denominator, which is always positive
+	 *
+	 * @return The denominator
+	 * @throws ArithmeticException when it does not fit in a long, see {@link #isLong()}
+	 */
+	public long getDenominator () {
+		if (bigNumerator != null)
+			throw new ArithmeticException(EXCEPTION_TOO_LARGE);
+		return denominator;
+	}
+
+	/**
+	 * Returns the numerator as a {@link java.math.BigInteger}
+	 *
+	 * @return The numerator
+	 */
+	public BigInteger getBigNumerator () {
+		return bigNumerator == null ? BigInteger.valueOf(numerator) : bigNumerator;
+	}
+
+	/**
+	 * Returns the denominator as a {@link java.math.BigInteger}
+	 *
+	 * @return The denominator
+	 */
+	public BigInteger getBigDenominator () {
+		return bigNumerator == null ? BigInteger.valueOf(denominator) : bigDenominator;
+	}
+
+	/**
+	 * Returns the sign of this fraction
+	 *
+	 * @return -1, 0 or 1
+	 */
+	public int signum () {
+		return bigNumerator == null ? Long.signum(numerator) : bigNumerator.signum();
+	}
+
+	/**
+	 * Adds the given fraction to this one
+	 *
+	 * @param other The fraction to add
+	 * @return The sum
+	 */
+	public Rational add (final Rational other) {
+		if (bigNumerator == null && other.bigNumerator == null) {
+			if (denominator == other.denominator && Math.abs(numerator) < Long.MAX_VALUE / 2 && Math.abs(other.numerator) < Long.MAX_VALUE / 2)
+				return valueOf(numerator + other.numerator, denominator);
+
+			// a/b + c/d = (a*(d/g) + c*(b/g)) / (b/g*d), where g is the gcd of the denominators. This keeps the intermediate values small
+			try {
+				final long gcd = gcd(denominator, other.denominator);
+				final long resultNumerator = addExact(multiplyExact(numerator, other.denominator / gcd), multiplyExact(other.numerator, denominator / gcd));
+				return valueOf(resultNumerator, multiplyExact(denominator / gcd, other.denominator));
+			} catch (final ArithmeticException e) {
+				// Overflow, fall through to the exact calculation
+			}
+		}
+		return valueOf(getBigNumerator().multiply(other.getBigDenominator()).add(other.getBigNumerator().multiply(getBigDenominator())),
+				getBigDenominator().multiply(other.getBigDenominator()));
+	}
+
+	/**
+	 * Multiplies this fraction with the given fraction
+	 *
+	 * @param other The fraction to multiply with
+	 * @return The product
+	 */
+	public Rational multiply (final Rational other) {
+		if (bigNumerator == null && other.bigNumerator == null) {
+			// Cross-reduce first, so the products are as small as possible
+			final long gcd1 = gcd(Math.abs(numerator), other.denominator);
+			final long gcd2 = gcd(Math.abs(other.numerator), denominator);
+			try {
+				return valueOf(multiplyExact(numerator / Math.max(gcd1, 1L), other.numerator / Math.max(gcd2, 1L)),
+						multiplyExact(denominator / Math.max(gcd2, 1L), other.denominator / Math.max(gcd1, 1L)));
+			} catch (final ArithmeticException e) {
+				// Overflow, fall through to the exact calculation
+			}
+		}
+		return valueOf(getBigNumerator().multiply(other.getBigNumerator()), getBigDenominator().multiply(other.getBigDenominator()));
+	}
+
+	/**
+	 * Multiplies this fraction with the given number
+	 *
+	 * @param n The number to multiply with
+	 * @return The product
+	 */
+	public Rational multiply (final long n) {
+		return multiply(valueOf(n));
+	}
+
+	/**
+	 * Divides this fraction by the given number
+	 *
+	 * @param n The number to divide by
+	 * @return The quotient
+	 * @throws ArithmeticException when n = 0
+	 */
+	public Rational divide (final long n) {
+		return multiply(valueOf(1L, n));
+	}
+
+	/**
+	 * Converts this fraction to a double, which might not be exact
+	 *
+	 * @return The value of this fraction
+	 */
+	public double doubleValue () {
+		if (bigNumerator == null)
+			return (double) numerator / denominator;
+		return bigNumerator.doubleValue() / bigDenominator.doubleValue();
+	}
+
+	@Override
+	public int compareTo (final Rational other) {
+		if (bigNumerator == null && other.bigNumerator == null) {
+			try {
+				final long left = multiplyExact(numerator, other.denominator);
+				final long right = multiplyExact(other.numerator, denominator);
+				return left < right ? -1 : (left == right ? 0 : 1);
+			} catch (final ArithmeticException e) {
+				// Overflow, fall through to the exact comparison
+			}
+		}
+		return getBigNumerator().multiply(other.getBigDenominator()).compareTo(other.getBigNumerator().multiply(getBigDenominator()));
+	}
+
+	@Override
+	public boolean equals (final Object other) {
+		if (other == this)
+			return true;
+		if (other instanceof Rational) {
+			// Both are always in the smallest form, so comparing the parts is enough
+			final Rational rational = (Rational) other;
+			if (bigNumerator == null)
+				return rational.bigNumerator == null && numerator == rational.numerator && denominator == rational.denominator;
+			return bigNumerator.equals(rational.bigNumerator) && bigDenominator.equals(rational.bigDenominator);
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode () {
+		if (bigNumerator == null)
+			return (int) (numerator ^ (numerator >>> 32)) * 31 + (int) (denominator ^ (denominator >>> 32));
+		return bigNumerator.hashCode() * 31 + bigDenominator.hashCode();
+	}
+
+	@Override
+	public String toString () {
+		if (bigNumerator == null)
+			return Long.toString(numerator) + CHAR_SLASH_FORWARD + denominator;
+		return bigNumerator.toString() + CHAR_SLASH_FORWARD + bigDenominator;
+	}
+}
@@ -441,7 +441,7 @@ public class JSONArray extends JSON {
 	 * @return this
 	 * @throws JSONException when the value is null
 	 */
-	private JSONArray add (final Object value) {
+	JSONArray add (final Object value) {
 		if (value != null) {
 			storage.add(value);
 			return this;
@@ -0,0 +1,527 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.json;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static com.grademanager.parser.Constants.*;
+
+/**
+ * A push-based JSON parser. Where {@link JSONObject} and {@link JSONArray} pull their characters from a {@link com.grademanager.parser.Tokenizer} (and thus block on its
+ * {@link java.io.Reader}), this parser gets its input pushed with {@link #feed(java.nio.ByteBuffer)} in chunks of any size. All state is kept between the chunks, so a value may
+ * be split anywhere, even in the middle of a multi-byte character. This makes it suitable for non-blocking I/O where no thread can wait for the whole stream.<br/>
+ * The input is a sequence of top-level objects or arrays (like {@link JSON#parseJSON(java.io.Reader)} accepts), and every one of them is given to the {@link Listener} as soon
+ * as its last character has been fed. The values are parsed the same way as {@link com.grademanager.parser.Parser} does.<br/>
+ * This class is not thread-safe: feed a single instance from one thread at a time.
+ *
+ * @author Wesley A
+ */
+public class JSONFeedParser {
+
+	/**
+	 * Receives the values from a {@link JSONFeedParser}
+	 *
+	 * @author Wesley A
+	 */
+	public static interface Listener {
+		/**
+		 * Called as soon as a top-level value is completely parsed
+		 *
+		 * @param json The parsed {@link JSONObject} or {@link JSONArray}
+		 */
+		public void onJSON (final JSON json);
+	}
+
+	// All constants used within this class only
+	private static final char CHAR_DOT = '.';
+
+	private static final char CHAR_E_LOWER = 'e';
+
+	private static final char CHAR_E_UPPER = 'E';
+
+	private static final char CHAR_QUOTE_SINGLE = '\'';
+
+	private static final char CHAR_SLASH_BACK = '\\';
+
+	private static final char CHAR_SUBTRACT = '-';
+
+	private static final String CHARSET_DEFAULT = "UTF-8";
+
+	private static final String EXCEPTION_END_OF_INPUT = "Unexpected end of input";
+
+	private static final String EXCEPTION_INVALID_ENCODING = "Invalid character encoding";
+
+	private static final String FORMAT_INVALID_NUMBER = "Invalid number '%s'";
+
+	private static final String FORMAT_INVALID_LITERAL = "Invalid value '%s'";
+
+	private static final String STRING_KEY = "key";
+
+	private static final String STRING_VALUE = "value";
+
+	private static final String STRING_DOCUMENT = "{' or '[";
+
+	private static final String STRING_TRUE = "true";
+
+	private static final String STRING_FALSE = "false";
+
+	private static final String STRING_NULL = "null";
+
+	// All states of the parser, these describe what is expected next
+	private static final int STATE_DOCUMENT = 0;
+
+	private static final int STATE_FIRST_KEY = 1;
+
+	private static final int STATE_KEY = 2;
+
+	private static final int STATE_COLON = 3;
+
+	private static final int STATE_FIRST_VALUE = 4;
+
+	private static final int STATE_VALUE = 5;
+
+	private static final int STATE_SEPARATOR = 6;
+
+	// All tokens which can span multiple characters (and thus multiple chunks)
+	private static final int TOKEN_NONE = 0;
+
+	private static final int TOKEN_STRING = 1;
+
+	private static final int TOKEN_NUMBER = 2;
+
+	private static final int TOKEN_LITERAL = 3;
+
+	/**
+	 * The listener which receives all parsed values
+	 */
+	private final Listener listener;
+
+	/**
+	 * Decodes the fed bytes into characters
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Holds the bytes of a character which was split over two chunks
+	 */
+	private final ByteBuffer remainder = ByteBuffer.allocate(8);
+
+	/**
+	 * The decoded characters, reused for every chunk
+	 */
+	private final CharBuffer characters = CharBuffer.allocate(1024);
+
+	/**
+	 * The characters of the current {@link #token}
+	 */
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * The containers which are not finished yet, the last one is the innermost container
+	 */
+	private JSON[] containers = new JSON[8];
+
+	/**
+	 * The keys for the values of the {@link JSONObject} containers, with the same index as {@link #containers}
+	 */
+	private String[] keys = new String[8];
+
+	/**
+	 * The amount of unfinished containers
+	 */
+	private int depth = 0;
+
+	/**
+	 * What the parser expects next
+	 */
+	private int state = STATE_DOCUMENT;
+
+	/**
+	 * The token which is being read
+	 */
+	private int token = TOKEN_NONE;
+
+	/**
+	 * The quote which opened the current string token
+	 */
+	private char quote;
+
+	/**
+	 * Whether the previous character of the current string token was a backslash
+	 */
+	private boolean backslash = false;
+
+	/**
+	 * Creates a new parser which decodes the input as UTF-8
+	 *
+	 * @param listener The listener to receive the parsed values
+	 * @throws NullPointerException when the listener is null
+	 */
+	public JSONFeedParser (final Listener listener) {
+		this(listener, Charset.forName(CHARSET_DEFAULT));
+	}
+
+	/**
+	 * Creates a new parser
+	 *
+	 * @param listener The listener to receive the parsed values
+	 * @param charset  The charset of the fed bytes
+	 * @throws NullPointerException when the listener or charset is null
+	 */
+	public JSONFeedParser (final Listener listener, final Charset charset) {
+		if (listener == null || charset == null)
+			throw new NullPointerException();
+		this.listener = listener;
+		this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+	}
+
+	/**
+	 * Feeds the next chunk of input. All bytes which are remaining in the buffer are consumed, and every value which is completed by them is given to the {@link #listener}
+	 * before this method returns.
+	 *
+	 * @param input The next chunk of bytes
+	 * @throws JSONException when a syntax error or an invalid character encoding is detected
+	 */
+	public void feed (final ByteBuffer input) {
+		// First complete the character which was split over the previous chunk
+		while (remainder.position() != 0 && input.hasRemaining()) {
+			remainder.put(input.get());
+			remainder.flip();
+			decode(remainder, false);
+			remainder.compact();
+		}
+
+		decode(input, false);
+		// Only the start of a multi-byte character can be left, keep it for the next chunk
+		if (input.hasRemaining())
+			remainder.put(input);
+	}
+
+	/**
+	 * Marks the end of the input. After this the parser is reset, so it can be used for a new stream.
+	 *
+	 * @throws JSONException when the input ended in the middle of a value
+	 */
+	public void end () {
+		remainder.flip();
+		decode(remainder, true);
+		flushDecoder();
+
+		final boolean finished = depth == 0 && token == TOKEN_NONE && remainder.remaining() == 0;
+		reset();
+		if (!finished)
+			throw new JSONException(EXCEPTION_END_OF_INPUT);
+	}
+
+	/**
+	 * Discards all unfinished input, so the parser can be used for a new stream
+	 */
+	public void reset () {
+		decoder.reset();
+		remainder.clear();
+		characters.clear();
+		text.setLength(0);
+		for (int i = 0; i < depth; i++) {
+			containers[i] = null;
+			keys[i] = null;
+		}
+		depth = 0;
+		state = STATE_DOCUMENT;
+		token = TOKEN_NONE;
+		backslash = false;
+	}
+
+	/**
+	 * Decodes the bytes and parses the decoded characters
+	 *
+	 * @param bytes      The bytes to decode
+	 * @param endOfInput Whether no bytes will follow these
+	 */
+	private void decode (final ByteBuffer bytes, final boolean endOfInput) {
+		CoderResult result;
+		do {
+			result = decoder.decode(bytes, characters, endOfInput);
+			parseCharacters();
+			if (result.isError())
+				throw new JSONException(EXCEPTION_INVALID_ENCODING);
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Flushes the characters which the {@link #decoder} might still hold at the end of the input
+	 */
+	private void flushDecoder () {
+		CoderResult result;
+		do {
+			result = decoder.flush(characters);
+			parseCharacters();
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Parses all characters in {@link #characters} and clears it afterwards
+	 */
+	private void parseCharacters () {
+		characters.flip();
+		while (characters.hasRemaining())
+			parse(characters.get());
+		characters.clear();
+	}
+
+	/**
+	 * Parses a single character
+	 *
+	 * @param character The next character of the input
+	 */
+	private void parse (final char character) {
+		// First continue the token which might have been started in a previous chunk
+		if (token == TOKEN_STRING) {
+			if (backslash) { // The character after a backslash is always part of the string
+				backslash = false;
+				text.append(character);
+			} else if (character == quote) {
+				token = TOKEN_NONE;
+				finishString();
+			} else {
+				if (character == CHAR_SLASH_BACK)
+					backslash = true; // The backslash is part of the string, just like Parser#parseString does
+				text.append(character);
+			}
+			return;
+		} else if (token == TOKEN_NUMBER) {
+			if (isNumberCharacter(character)) {
+				text.append(character);
+				return;
+			}
+			// The number ends at this character, so this character still has to be parsed
+			token = TOKEN_NONE;
+			finishNumber();
+		} else if (token == TOKEN_LITERAL) {
+			if (Character.isLetter(character)) {
+				text.append(character);
+				return;
+			}
+			token = TOKEN_NONE;
+			finishLiteral();
+		}
+
+		if (Character.isWhitespace(character))
+			return;
+
+		switch (state) {
+			case STATE_DOCUMENT:
+				if (!startContainer(character))
+					throw new JSONException(FORMAT_EXPECTED_CHAR, STRING_DOCUMENT);
+				break;
+			case STATE_FIRST_KEY:
+				if (character == CHAR_JSON_OBJECT_END)
+					finishContainer();
+				else
+					startKey(character); // Otherwise it must be a key, like any other key
+				break;
+			case STATE_KEY:
+				startKey(character);
+				break;
+			case STATE_COLON:
+				if (character != CHAR_COLON)
+					throw new JSONException(FORMAT_EXPECTED_CHAR, CHAR_COLON);
+				state = STATE_VALUE;
+				break;
+			case STATE_FIRST_VALUE:
+				if (character == CHAR_JSON_ARRAY_END)
+					finishContainer();
+				else
+					startValue(character); // Otherwise it must be a value, like any other value
+				break;
+			case STATE_VALUE:
+				startValue(character);
+				break;
+			case STATE_SEPARATOR:
+				final boolean inObject = containers[depth - 1] instanceof JSONObject;
+				if (character == CHAR_COMMA) {
+					state = inObject ? STATE_KEY : STATE_VALUE;
+				} else if (character == (inObject ? CHAR_JSON_OBJECT_END : CHAR_JSON_ARRAY_END)) {
+					finishContainer();
+				} else {
+					throw new JSONException(FORMAT_EXPECTED_CHAR, inObject ? CHAR_JSON_OBJECT_END : CHAR_JSON_ARRAY_END);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Starts the key of which the character is the first one
+	 *
+	 * @param character The first character of the key
+	 * @throws JSONException when the character does not start a string
+	 */
+	private void startKey (final char character) {
+		if (!startString(character))
+			throw new JSONException(FORMAT_EXPECTED_CHAR, STRING_KEY);
+	}
+
+	/**
+	 * Starts the value of which the character is the first one: a container, a string, a number or a literal
+	 *
+	 * @param character The first character of the value
+	 * @throws JSONException when the character does not start a value
+	 */
+	private void startValue (final char character) {
+		if (!startContainer(character) && !startString(character)) {
+			if (Character.isDigit(character) || character == CHAR_SUBTRACT || character == CHAR_PLUS || character == CHAR_DOT) {
+				token = TOKEN_NUMBER;
+				text.setLength(0);
+				text.append(character);
+			} else if (Character.isLetter(character)) {
+				token = TOKEN_LITERAL;
+				text.setLength(0);
+				text.append(character);
+			} else {
+				throw new JSONException(FORMAT_EXPECTED_CHAR, STRING_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * Starts a new container when the character opens one
+	 *
+	 * @param character The character to check
+	 * @return Whether a container has been started
+	 */
+	private boolean startContainer (final char character) {
+		final JSON container;
+		if (character == CHAR_JSON_OBJECT_START) {
+			container = new JSONObject();
+			state = STATE_FIRST_KEY;
+		} else if (character == CHAR_JSON_ARRAY_START) {
+			container = new JSONArray();
+			state = STATE_FIRST_VALUE;
+		} else {
+			return false;
+		}
+
+		// Grow the stack when needed
+		if (depth == containers.length) {
+			final JSON[] newContainers = new JSON[depth * 2];
+			final String[] newKeys = new String[depth * 2];
+			System.arraycopy(containers, 0, newContainers, 0, depth);
+			System.arraycopy(keys, 0, newKeys, 0, depth);
+			containers = newContainers;
+			keys = newKeys;
+		}
+		containers[depth++] = container;
+		return true;
+	}
+
+	/**
+	 * Starts a new string token when the character is a quote
+	 *
+	 * @param character The character to check
+	 * @return Whether a string has been started
+	 */
+	private boolean startString (final char character) {
+		if (character == CHAR_QUOTE_DOUBLE || character == CHAR_QUOTE_SINGLE) {
+			token = TOKEN_STRING;
+			quote = character;
+			text.setLength(0);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finishes the innermost container. When this is a top-level container it is given to the {@link #listener}, otherwise it is added to its parent container.
+	 */
+	private void finishContainer () {
+		final JSON container = containers[--depth];
+		containers[depth] = null;
+		keys[depth] = null;
+
+		if (depth == 0) {
+			state = STATE_DOCUMENT;
+			listener.onJSON(container);
+		} else {
+			addValue(container);
+		}
+	}
+
+	/**
+	 * Finishes a string token, which either is a key or a value
+	 */
+	private void finishString () {
+		if (state == STATE_FIRST_KEY || state == STATE_KEY) {
+			keys[depth - 1] = text.toString();
+			state = STATE_COLON;
+		} else {
+			addValue(text.toString());
+		}
+	}
+
+	/**
+	 * Finishes a number token
+	 */
+	private void finishNumber () {
+		final String number = text.toString();
+		try {
+			addValue(Double.parseDouble(number));
+		} catch (final NumberFormatException e) {
+			throw new JSONException(FORMAT_INVALID_NUMBER, number);
+		}
+	}
+
+	/**
+	 * Finishes a literal token, which must be true, false or null
+	 */
+	private void finishLiteral () {
+		final String literal = text.toString();
+		if (STRING_TRUE.equals(literal))
+			addValue(Boolean.TRUE);
+		else if (STRING_FALSE.equals(literal))
+			addValue(Boolean.FALSE);
+		else if (STRING_NULL.equals(literal))
+			addValue(JSON.NULL);
+		else
+			throw new JSONException(FORMAT_INVALID_LITERAL, literal);
+	}
+
+	/**
+	 * Adds a finished value to the innermost container
+	 *
+	 * @param value The value to add
+	 */
+	private void addValue (final Object value) {
+		final JSON container = containers[depth - 1];
+		if (container instanceof JSONObject) {
+			((JSONObject) container).set(keys[depth - 1], value);
+			keys[depth - 1] = null;
+		} else {
+			((JSONArray) container).add(value);
+		}
+		state = STATE_SEPARATOR;
+	}
+
+	/**
+	 * Checks whether the character can be part of a number
+	 *
+	 * @param character The character to check
+	 * @return Whether it can be part of a number
+	 */
+	private static boolean isNumberCharacter (final char character) {
+		return Character.isDigit(character) || character == CHAR_DOT || character == CHAR_SUBTRACT || character == CHAR_PLUS || character == CHAR_E_LOWER || character == CHAR_E_UPPER;
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.json;
+
+import com.grademanager.parser.SyntaxException;
+import com.grademanager.parser.Tokenizer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static com.grademanager.parser.Constants.CHAR_JSON_OBJECT_END;
+import static com.grademanager.parser.Constants.CHAR_JSON_OBJECT_START;
+import static com.grademanager.parser.Constants.FORMAT_EXPECTED_CHAR;
+
+/**
+ * Reads a stream of JSON Lines (also known as NDJSON): every line holds exactly one {@link JSONObject}. In contrast with {@link JSON#parseJSON(Reader)} this never holds more
+ * than one line in memory, so record files of any size can be processed record by record.<br/>
+ * Blank lines are skipped, anything else after the object of a line is an error. An empty object like <code>{}</code> is a valid record, as written by {@link
+ * JSONLinesWriter}. When one thread reads the records it can simply use this as an {@link Iterator}, when multiple worker threads share this reader they should use
+ * {@link #poll()} instead: only the reading of a line is synchronized, the actual parsing happens on the calling thread.
+ *
+ * @author Wesley A
+ */
+public class JSONLinesReader implements Iterator<JSONObject>, Iterable<JSONObject>, Closeable {
+
+	// All constants used within this class only
+	private static final String FORMAT_INVALID_LINE = "Line %d: %s";
+
+	private static final String FORMAT_TRAILING = "Line %d: Unexpected '%s' after the record";
+
+	private static final String STRING_READER_NULL = "Reader is null";
+
+	/**
+	 * The reader which delivers the lines
+	 */
+	private final BufferedReader reader;
+
+	/**
+	 * The line which is read ahead by {@link #hasNext()}, null when nothing is read ahead
+	 */
+	private String nextLine;
+
+	/**
+	 * The line number of {@link #nextLine}
+	 */
+	private long nextLineNumber;
+
+	/**
+	 * The amount of lines read from {@link #reader}, used for error messages
+	 */
+	private long lineNumber = 0;
+
+	/**
+	 * Creates a new reader for the JSON Lines in the given reader
+	 *
+	 * @param reader The reader to read the lines from
+	 * @throws NullPointerException when the reader is null
+	 */
+	public JSONLinesReader (final Reader reader) {
+		if (reader == null)
+			throw new NullPointerException(STRING_READER_NULL);
+		this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+	}
+
+	/**
+	 * Checks if there is another record, the line of it is read ahead
+	 *
+	 * @return Whether there is another record
+	 * @throws JSONException when the stream could not be read, so a broken stream is never mistaken for the end of it
+	 */
+	@Override
+	public synchronized boolean hasNext () {
+		if (nextLine == null) {
+			nextLine = readLine();
+			nextLineNumber = lineNumber;
+		}
+		return nextLine != null;
+	}
+
+	@Override
+	public JSONObject next () {
+		final String line;
+		final long number;
+		synchronized (this) {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			line = nextLine;
+			number = nextLineNumber;
+			nextLine = null;
+		}
+		return parse(line, number);
+	}
+
+	/**
+	 * Retrieves and parses the next record. Unlike {@link #hasNext()} and {@link #next()} this is one single call, so it is safe to use when multiple threads consume this
+	 * reader at the same time.
+	 *
+	 * @return The next {@link JSONObject} or null when the end of the stream is reached
+	 * @throws JSONException when the line is not a valid {@link JSONObject} or the stream could not be read
+	 */
+	public JSONObject poll () {
+		final String line;
+		final long number;
+		synchronized (this) {
+			if (!hasNext())
+				return null;
+			line = nextLine;
+			number = nextLineNumber;
+			nextLine = null;
+		}
+		return parse(line, number);
+	}
+
+	/**
+	 * This reader can only be iterated once, so this simply returns itself
+	 *
+	 * @return this
+	 */
+	@Override
+	public Iterator<JSONObject> iterator () {
+		return this;
+	}
+
+	/**
+	 * Records cannot be removed from a stream
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void remove () {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Closes the original reader
+	 *
+	 * @throws IOException if an error occurs closing this reader
+	 */
+	@Override
+	public void close () throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Reads the next line which is not blank
+	 *
+	 * @return The line or null when the end of the stream is reached
+	 * @throws JSONException when the reader throws an {@link IOException}, with the number of the line which could not be read
+	 */
+	private String readLine () {
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!line.trim().isEmpty())
+					return line;
+			}
+		} catch (final IOException e) {
+			final JSONException exception = new JSONException(FORMAT_INVALID_LINE, lineNumber + 1, e.getMessage());
+			exception.initCause(e);
+			throw exception;
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a single line to a {@link JSONObject}, which has to be the only thing on the line
+	 *
+	 * @param line   The line to parse
+	 * @param number The line number, used in the exception message
+	 * @return The parsed object
+	 * @throws JSONException when the line is not a valid {@link JSONObject} or there is more after it
+	 */
+	private static JSONObject parse (final String line, final long number) {
+		final Tokenizer tokenizer = new Tokenizer(new StringReader(line));
+		final JSONObject object;
+		try {
+			if (!tokenizer.isNext(CHAR_JSON_OBJECT_START))
+				throw new SyntaxException(FORMAT_EXPECTED_CHAR, CHAR_JSON_OBJECT_START);
+			// JSONObject needs at least one key, so an empty object is handled here. Otherwise it gets its opening brace back
+			if (tokenizer.isNext(CHAR_JSON_OBJECT_END)) {
+				object = new JSONObject();
+			} else {
+				tokenizer.inject(String.valueOf(CHAR_JSON_OBJECT_START));
+				object = new JSONObject(tokenizer);
+			}
+		} catch (final SyntaxException e) {
+			throw new JSONException(FORMAT_INVALID_LINE, number, e.getMessage());
+		}
+
+		// The object ends at its closing brace, like a second record on the same line
+		tokenizer.skipBlanks();
+		if (tokenizer.peek() != null)
+			throw new JSONException(FORMAT_TRAILING, number, tokenizer.peek());
+		return object;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.json;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+/**
+ * The counterpart of {@link JSONLinesReader}: appends {@link JSONObject} records to a {@link java.io.Writer}, one record per line. Every record is first written to an
+ * internal buffer, which is reused, and then appended as a whole. So a record never ends up half-written between other records, even when multiple threads append to this.<br/>
+ * The records are written without indentation, so a line break can only come from a string in the record. Such a record is rejected, since it would be read back as
+ * multiple lines. The strings cannot be escaped instead, because {@link JSONLinesReader} keeps escape sequences as they are.
+ *
+ * @author Wesley A
+ */
+public class JSONLinesWriter {
+
+	// All constants used within this class only
+	private static final char CHAR_LINE_END = '\n';
+
+	private static final char CHAR_CARRIAGE_RETURN = '\r';
+
+	private static final String FORMAT_LINE_BREAK = "A record can not contain a line break, found one at %d";
+
+	private static final String STRING_WRITER_NULL = "Writer is null";
+
+	/**
+	 * {@link java.io.Writer} to append the lines to
+	 */
+	private final Writer writer;
+
+	/**
+	 * The buffer which holds a single record
+	 */
+	private final StringWriter buffer = new StringWriter();
+
+	/**
+	 * Writes the records to {@link #buffer} without indentation. This does not flush the actual {@link #writer}
+	 */
+	private final JSONWriter recordWriter = new JSONWriter(buffer, false);
+
+	/**
+	 * Creates a new instance of this class
+	 *
+	 * @param writer - The writer to append the lines to
+	 * @throws NullPointerException when the writer is null
+	 */
+	public JSONLinesWriter (final Writer writer) {
+		if (writer == null)
+			throw new NullPointerException(STRING_WRITER_NULL);
+		this.writer = writer;
+	}
+
+	/**
+	 * Appends the object as a single line
+	 *
+	 * @param object - The object to write to the {@link #writer}
+	 * @throws java.io.IOException when the writer throws one
+	 * @throws JSONException when a string in the object contains a line break, nothing is written then
+	 */
+	public synchronized void append (final JSONObject object) throws IOException {
+		final StringBuffer record = buffer.getBuffer();
+		record.setLength(0);
+		recordWriter.append(object);
+		for (int i = 0; i < record.length(); i++) {
+			final char character = record.charAt(i);
+			if (character == CHAR_LINE_END || character == CHAR_CARRIAGE_RETURN)
+				throw new JSONException(FORMAT_LINE_BREAK, i);
+		}
+		record.append(CHAR_LINE_END);
+
+		writer.append(record);
+	}
+
+	/**
+	 * Flushes the original writer
+	 *
+	 * @throws IOException if an error occurs flushing the writer
+	 */
+	public synchronized void flush () throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Closes the original writer
+	 *
+	 * @throws IOException if an error occurs closing the writer
+	 */
+	public synchronized void close () throws IOException {
+		writer.close();
+	}
+}
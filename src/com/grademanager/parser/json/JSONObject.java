@@ -309,7 +309,7 @@ public class JSONObject extends JSON {
 	 * @return Whether it succeed or not to set the value. It will fail when the key or value is null.
 	 * @throws JSONException when the key or value is null (use {@link #setNull(String)} to set a value to null}
 	 */
-	private JSONObject set (final String key, final Object value) {
+	JSONObject set (final String key, final Object value) {
 		if (key != null && value != null) {
 			storage.put(key, value);
 			return this;
@@ -17,6 +17,10 @@ import com.grademanager.parser.json.JSON.Type;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import static com.grademanager.parser.Constants.CHAR_COLON;
 import static com.grademanager.parser.Constants.CHAR_COMMA;
@@ -26,7 +30,9 @@ import static com.grademanager.parser.Constants.CHAR_JSON_OBJECT_END;
 import static com.grademanager.parser.Constants.CHAR_JSON_OBJECT_START;
 
 /**
- * This class is used to write to a {@link java.io.Writer} object.
+ * This class is used to write to a {@link java.io.Writer} object.<br/>
+ * A writer created with {@link #canonical(java.io.Writer)} writes the canonical form: keys are sorted, numbers are normalised and no whitespace is added. The same content
+ * then always results in the same characters, and while writing a content hash is computed which can be retrieved with {@link #getContentHash()}.
  *
  * @author Wesley A
  */
@@ -35,12 +41,19 @@ public class JSONWriter {
 	// All constants used within this class only
 	private static final char CHAR_TAB = '\t';
 
-	private static final String STRING_EMPTY = "";
-
 	private static final String STRING_SPACE = " ";
 
 	private static final String STRING_WRITER_NULL = "Writer is null";
 
+	private static final String ALGORITHM_HASH = "SHA-256";
+
+	private static final Charset CHARSET_HASH = Charset.forName("UTF-8");
+
+	/**
+	 * Doubles with an absolute value below this are written as a whole number when they have no fraction (all these fit in a double exactly)
+	 */
+	private static final double MAX_WHOLE_DOUBLE = 9007199254740992D;
+
 	private static final String STRING_lINE_SEPARATOR;
 
 	static {
@@ -57,6 +70,11 @@ public class JSONWriter {
 	 */
 	private final boolean indent;
 
+	/**
+	 * The digest of everything written so far, only available in the canonical mode
+	 */
+	private final MessageDigest digest;
+
 	/**
 	 * Current indentation level
 	 */
@@ -78,12 +96,40 @@ public class JSONWriter {
 	 * @param indent - True to indent and add line-ends or false to have plain text
 	 */
 	public JSONWriter (final Writer writer, final boolean indent) {
+		this(writer, indent, null);
+	}
+
+	/**
+	 * Creates a new instance of this class
+	 *
+	 * @param writer - The writer to use in this object
+	 * @param indent - True to indent and add line-ends or false to have plain text
+	 * @param digest - The digest to update with everything written, or null to write normally. When not null this writes the canonical form
+	 */
+	private JSONWriter (final Writer writer, final boolean indent, final MessageDigest digest) {
 		this.writer = writer;
 		this.indent = indent;
+		this.digest = digest;
 		if (writer == null)
 			throw new NullPointerException(STRING_WRITER_NULL);
 	}
 
+	/**
+	 * Creates a writer which writes the canonical form of the objects and computes the content hash (SHA-256) of it
+	 *
+	 * @param writer - The writer to use in this object
+	 * @return A writer in the canonical mode
+	 * @see #getContentHash()
+	 */
+	public static JSONWriter canonical (final Writer writer) {
+		try {
+			return new JSONWriter(writer, false, MessageDigest.getInstance(ALGORITHM_HASH));
+		} catch (final NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
 	/**
 	 * Appends the writer with this object
 	 *
@@ -91,7 +137,7 @@ public class JSONWriter {
 	 * @throws java.io.IOException when the writer throws one
 	 */
 	public synchronized void append (final JSONArray parser) throws IOException {
-		writer.write(CHAR_JSON_ARRAY_START);
+		write(CHAR_JSON_ARRAY_START);
 
 		tabs += 1;
 		int maxIndex = parser.getSize();
@@ -103,7 +149,7 @@ public class JSONWriter {
 		tabs -= 1;
 		if (maxIndex != 0)
 			markLineEnd();
-		writer.write(CHAR_JSON_ARRAY_END);
+		write(CHAR_JSON_ARRAY_END);
 		writer.flush();
 	}
 
@@ -114,24 +160,41 @@ public class JSONWriter {
 	 * @throws java.io.IOException when the {@link #writer} throws one
 	 */
 	public synchronized void append (final JSONObject parser) throws IOException {
-		writer.write(CHAR_JSON_OBJECT_START);
+		write(CHAR_JSON_OBJECT_START);
 
 		tabs += 1;
 		String[] keys = parser.getKeys();
+		if (digest != null)
+			Arrays.sort(keys); // The order of the keys is not defined, so sort them to always have the same output
 		for (int i = 0; i < keys.length; i++) {
 			markLineEnd();
 			writeString(keys[i]);
-			writer.write(CHAR_COLON + (indent ? STRING_SPACE : STRING_EMPTY));
+			write(CHAR_COLON);
+			if (indent)
+				write(STRING_SPACE);
 			writeValue(parser.get(keys[i]), i != keys.length - 1);
 		}
 
 		tabs -= 1;
 		//if(keys.length != 0)
 		markLineEnd();
-		writer.write(CHAR_JSON_OBJECT_END);
+		write(CHAR_JSON_OBJECT_END);
 		writer.flush();
 	}
 
+	/**
+	 * Retrieves the content hash of everything which is written since the creation of this writer or since the previous call to this method. Equal content always has the
+	 * same hash, so it can be used to find out if content changed without parsing it again.
+	 *
+	 * @return The SHA-256 hash of the written characters, encoded as UTF-8
+	 * @throws IllegalStateException when this writer is not created with {@link #canonical(java.io.Writer)}
+	 */
+	public synchronized byte[] getContentHash () {
+		if (digest == null)
+			throw new IllegalStateException();
+		return digest.digest();
+	}
+
 	/**
 	 * Closes the original writer
 	 *
@@ -149,11 +212,11 @@ public class JSONWriter {
 	 */
 	private void markLineEnd () throws IOException {
 		if (indent) {
-			writer.write(STRING_lINE_SEPARATOR);
+			write(STRING_lINE_SEPARATOR);
 			StringBuilder sb = new StringBuilder();
 			for (int i = 0; i < tabs; i++)
 				sb.append(CHAR_TAB);
-			writer.write(sb.toString());
+			write(sb.toString());
 		}
 	}
 
@@ -173,12 +236,14 @@ public class JSONWriter {
 				append((JSONArray) object);
 			} else if (type == Type.JSONObject) {
 				append((JSONObject) object);
+			} else if (type == Type.Number && digest != null) {
+				write(normaliseNumber((Number) object));
 			} else {
-				writer.write(object.toString());
+				write(object.toString());
 			}
 
 			if (hasNext)
-				writer.write(CHAR_COMMA);
+				write(CHAR_COMMA);
 		}
 	}
 
@@ -190,9 +255,53 @@ public class JSONWriter {
 	 */
 	private void writeString (final String string) throws IOException {
 		if (string != null) {
-			writer.write(Constants.CHAR_QUOTE_DOUBLE);
-			writer.write(string);
-			writer.write(Constants.CHAR_QUOTE_DOUBLE);
+			write(Constants.CHAR_QUOTE_DOUBLE);
+			write(string);
+			write(Constants.CHAR_QUOTE_DOUBLE);
+		}
+	}
+
+	/**
+	 * Writes the string to the {@link #writer} and updates the {@link #digest} with it
+	 *
+	 * @param string - The string to write
+	 * @throws java.io.IOException when the {@link #writer} throws one
+	 */
+	private void write (final String string) throws IOException {
+		writer.write(string);
+		if (digest != null)
+			digest.update(string.getBytes(CHARSET_HASH));
+	}
+
+	/**
+	 * Writes the character to the {@link #writer} and updates the {@link #digest} with it
+	 *
+	 * @param character - The character to write
+	 * @throws java.io.IOException when the {@link #writer} throws one
+	 */
+	private void write (final char character) throws IOException {
+		writer.write(character);
+		if (digest != null) {
+			if (character < 0x80)
+				digest.update((byte) character);
+			else
+				digest.update(String.valueOf(character).getBytes(CHARSET_HASH));
 		}
 	}
+
+	/**
+	 * Creates the normalised form of a number: whole numbers are written without a fraction and all other numbers as a double. So 8, 8L and 8.0 are all written as 8.
+	 *
+	 * @param number - The number to normalise
+	 * @return The normalised number
+	 */
+	private static String normaliseNumber (final Number number) {
+		if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte)
+			return Long.toString(number.longValue());
+
+		final double value = number.doubleValue();
+		if (value == Math.rint(value) && Math.abs(value) < MAX_WHOLE_DOUBLE)
+			return Long.toString((long) value); // This also turns -0.0 into 0
+		return Double.toString(value);
+	}
 }
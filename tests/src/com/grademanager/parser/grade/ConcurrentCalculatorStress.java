@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A stress test of {@link com.grademanager.parser.grade.ConcurrentCalculator}, which runs as a plain program since this project has no test suite. Writer threads change
+ * the grades while reader threads check that they never see half of a change:
+ * <ul>
+ * <li>The pair test flips the values of two grades with the same weighting in one {@link ConcurrentCalculator#update(int[], double[])}, their sum always stays the same. So
+ * the average of every snapshot is exactly the same, and the grades of the pair always add up to the sum.</li>
+ * <li>The group test sets all grades of a calculator to one value in one update, every writer uses its own value. So all grades of a snapshot have the same value, which is
+ * also the average.</li>
+ * </ul>
+ * In both tests the {@link ConcurrentCalculator.Snapshot#version} a reader sees may never go backwards, and afterwards the version must be the amount of updates, so no update
+ * got lost. Run it with {@code java com.grademanager.parser.grade.ConcurrentCalculatorStress [writers] [readers] [updates per writer]}, it exits with status 1 when a check
+ * fails.
+ *
+ * @author Wesley A
+ */
+public final class ConcurrentCalculatorStress {
+
+	// Constants which are used within this class only
+	private static final int DEFAULT_WRITERS = 3;
+
+	private static final int DEFAULT_READERS = 5;
+
+	private static final int DEFAULT_UPDATES = 200000;
+
+	private static final int GROUP_SIZE = 8;
+
+	private static final double PAIR_SUM = 10D;
+
+	private static final double OTHER_VALUE = 7D;
+
+	private static final String FORMAT_RESULT = "%s: %d updates, %d reads by %d readers, version %d%n";
+
+	private static final String FORMAT_FAILED = "%s failed: %s%n";
+
+	private static final String FORMAT_AVERAGE = "average %s at version %d, expected %s";
+
+	private static final String FORMAT_PAIR = "pair %s + %s at version %d";
+
+	private static final String FORMAT_GROUP = "grade %d is %s and grade 0 is %s at version %d";
+
+	private static final String FORMAT_VERSION = "version %d after version %d";
+
+	private static final String FORMAT_LOST = "version %d after %d updates";
+
+	/**
+	 * One of the tests, which creates the calculator, does the writes and checks the snapshots
+	 *
+	 * @author Wesley A
+	 */
+	private static abstract class Test {
+
+		/**
+		 * The name used in the output
+		 */
+		private final String name;
+
+		/**
+		 * The calculator under test
+		 */
+		final ConcurrentCalculator calculator;
+
+		Test (final String name, final ConcurrentCalculator calculator) {
+			this.name = name;
+			this.calculator = calculator;
+		}
+
+		/**
+		 * Does one update
+		 *
+		 * @param writer The number of the writer
+		 * @param update The number of the update of the writer
+		 */
+		abstract void write (int writer, int update);
+
+		/**
+		 * Checks one snapshot
+		 *
+		 * @param snapshot The snapshot
+		 * @return The description of what is wrong, or null when the snapshot is fine
+		 */
+		abstract String check (ConcurrentCalculator.Snapshot snapshot);
+	}
+
+	/**
+	 * Flips grades 0 and 1, which have weighting 1, while grade 2 with weighting 2 keeps its value. All values are multiples of 0.5, so every sum is exact
+	 *
+	 * @author Wesley A
+	 */
+	private static final class PairTest extends Test {
+
+		// All constants used within this class only
+		private static final String NAME = "pair";
+
+		private static final double AVERAGE = (PAIR_SUM + 2 * OTHER_VALUE) / 4;
+
+		private final int[] indices = {0, 1};
+
+		PairTest () {
+			super(NAME, new ConcurrentCalculator(new String[]{"A", "B", "C"}, new int[]{1, 1, 2}));
+			calculator.update(new int[]{0, 1, 2}, new double[]{PAIR_SUM / 2, PAIR_SUM / 2, OTHER_VALUE});
+		}
+
+		@Override
+		void write (final int writer, final int update) {
+			final double value = 1D + ((writer * 7 + update) % 17) / 2D;
+			calculator.update(indices, new double[]{value, PAIR_SUM - value});
+		}
+
+		@Override
+		String check (final ConcurrentCalculator.Snapshot snapshot) {
+			if (snapshot.calculateAverage() != AVERAGE)
+				return String.format(FORMAT_AVERAGE, snapshot.calculateAverage(), snapshot.version, AVERAGE);
+			if (snapshot.getValue(0) + snapshot.getValue(1) != PAIR_SUM)
+				return String.format(FORMAT_PAIR, snapshot.getValue(0), snapshot.getValue(1), snapshot.version);
+			return null;
+		}
+	}
+
+	/**
+	 * Sets all {@link #GROUP_SIZE} grades to the number of the writer plus a part of the update, so a snapshot which mixes two updates has different values
+	 *
+	 * @author Wesley A
+	 */
+	private static final class GroupTest extends Test {
+
+		// All constants used within this class only
+		private static final String NAME = "group";
+
+		private final int[] indices = new int[GROUP_SIZE];
+
+		GroupTest () {
+			super(NAME, new ConcurrentCalculator(createNames(), createWeightings()));
+			for (int i = 0; i < GROUP_SIZE; i++)
+				indices[i] = i;
+			final double[] values = new double[GROUP_SIZE];
+			for (int i = 0; i < GROUP_SIZE; i++)
+				values[i] = 1D;
+			calculator.update(indices, values);
+		}
+
+		private static String[] createNames () {
+			final String[] names = new String[GROUP_SIZE];
+			for (int i = 0; i < GROUP_SIZE; i++)
+				names[i] = "SE" + (i + 1);
+			return names;
+		}
+
+		private static int[] createWeightings () {
+			final int[] weightings = new int[GROUP_SIZE];
+			for (int i = 0; i < GROUP_SIZE; i++)
+				weightings[i] = i + 1;
+			return weightings;
+		}
+
+		@Override
+		void write (final int writer, final int update) {
+			final double value = 1D + writer + (update % 8) / 8D;
+			final double[] values = new double[GROUP_SIZE];
+			for (int i = 0; i < GROUP_SIZE; i++)
+				values[i] = value;
+			calculator.update(indices, values);
+		}
+
+		@Override
+		String check (final ConcurrentCalculator.Snapshot snapshot) {
+			final double value = snapshot.getValue(0);
+			for (int i = 1; i < GROUP_SIZE; i++)
+				if (snapshot.getValue(i) != value)
+					return String.format(FORMAT_GROUP, i, snapshot.getValue(i), value, snapshot.version);
+			if (snapshot.calculateAverage() != value)
+				return String.format(FORMAT_AVERAGE, snapshot.calculateAverage(), snapshot.version, value);
+			return null;
+		}
+	}
+
+	private ConcurrentCalculatorStress () {}
+
+	public static void main (final String[] args) throws InterruptedException {
+		final int writers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_WRITERS;
+		final int readers = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_READERS;
+		final int updates = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_UPDATES;
+
+		final boolean pairPassed = run(new PairTest(), writers, readers, updates);
+		final boolean groupPassed = run(new GroupTest(), writers, readers, updates);
+		if (!pairPassed || !groupPassed)
+			System.exit(1);
+	}
+
+	/**
+	 * Runs the test with the writers and readers, which all start at the same moment. The readers keep reading until all writers are done
+	 *
+	 * @param test    The test to run
+	 * @param writers The amount of writer threads
+	 * @param readers The amount of reader threads
+	 * @param updates The amount of updates of every writer
+	 * @return Whether the test passed
+	 */
+	private static boolean run (final Test test, final int writers, final int readers, final int updates) throws InterruptedException {
+		final long startVersion = test.calculator.getSnapshot().version;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(writers);
+		final AtomicReference<String> failure = new AtomicReference<>();
+		final long[] reads = new long[readers];
+
+		final Thread[] threads = new Thread[writers + readers];
+		for (int i = 0; i < writers; i++) {
+			final int writer = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run () {
+					await(start);
+					for (int update = 0; update < updates && failure.get() == null; update++)
+						test.write(writer, update);
+					written.countDown();
+				}
+			};
+		}
+		for (int i = 0; i < readers; i++) {
+			final int reader = i;
+			threads[writers + i] = new Thread() {
+				@Override
+				public void run () {
+					await(start);
+					long lastVersion = -1L;
+					while (written.getCount() != 0 && failure.get() == null) {
+						final ConcurrentCalculator.Snapshot snapshot = test.calculator.getSnapshot();
+						final String problem = snapshot.version < lastVersion ? String.format(FORMAT_VERSION, snapshot.version, lastVersion) : test.check(snapshot);
+						if (problem != null)
+							failure.compareAndSet(null, problem);
+						lastVersion = snapshot.version;
+						reads[reader]++;
+					}
+				}
+			};
+		}
+
+		for (final Thread thread : threads)
+			thread.start();
+		start.countDown();
+		for (final Thread thread : threads)
+			thread.join();
+
+		final long version = test.calculator.getSnapshot().version;
+		if (failure.get() == null && version - startVersion != (long) writers * updates)
+			failure.set(String.format(FORMAT_LOST, version - startVersion, (long) writers * updates));
+
+		long totalReads = 0L;
+		for (final long count : reads)
+			totalReads += count;
+		if (failure.get() != null) {
+			System.out.printf(FORMAT_FAILED, test.name, failure.get());
+			return false;
+		}
+		System.out.printf(FORMAT_RESULT, test.name, (long) writers * updates, totalReads, readers, version);
+		return true;
+	}
+
+	/**
+	 * Waits until the latch is open, so all threads start at the same moment
+	 *
+	 * @param latch The latch
+	 */
+	private static void await (final CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+import com.grademanager.parser.SyntaxException;
+
+import java.util.Random;
+
+/**
+ * A differential check of {@link ExpressionCalculator#validate(CharSequence)} against the parser, which runs as a plain program since this project has no test suite. The
+ * validator has its own scan of the grammar, so this makes sure both accept exactly the same expressions:
+ * <ul>
+ * <li>A list of fixed expressions, with the quirks of the parser like weightings which have to add up to 1, int casts and divisors.</li>
+ * <li>Random strings of the characters of the grammar, which are mostly invalid.</li>
+ * <li>Random expressions built from the grammar, which are mostly valid, with one random character changed in half of them.</li>
+ * </ul>
+ * Run it with {@code java com.grademanager.parser.grade.ExpressionValidatorCheck [expressions] [seed]}, it exits with status 1 when the validator and the parser disagree
+ * about an expression.
+ *
+ * @author Wesley A
+ */
+public final class ExpressionValidatorCheck {
+
+	// Constants which are used within this class only
+	private static final int DEFAULT_EXPRESSIONS = 1000000;
+
+	private static final long DEFAULT_SEED = 47L;
+
+	private static final int MAX_LENGTH = 16;
+
+	private static final int MAX_DEPTH = 3;
+
+	private static final int MAX_SHOWN = 10;
+
+	private static final String ALPHABET = "AB()+*/.-20 3,";
+
+	private static final String[] NAMES = {"A", "B", "SE1", "P2"};
+
+	private static final String[] WEIGHTINGS = {"", "", "2", "3", "2*", "0.5", "1.5", "0"};
+
+	/**
+	 * The weightings of {@link #WEIGHTINGS} which are whole numbers
+	 */
+	private static final int[] WHOLE_WEIGHTINGS = {1, 1, 2, 3, 2};
+
+	private static final String[] DIVISORS = {"", "/2", "/3", "/4", "/0", "/2.5"};
+
+	private static final String[] FIXED = {"(SE1+SE2)/2", "(3P+2W+2T)/7", "((A+B))", "A/", "A", "2A/2", "(2A)/2", "(A+B)/", "2*(A+B)/4", "2*3*(A+B)/12", "(A/2+B/2)",
+			"(A*0.5+B/2)", "-1A+2B", "(-1A+2B)", "(2A+-1B)", "(A+B)/2.9", "0.5(A+B)", "(A+B)*", "(A,B)", "(A+B)/2)", "((A+B)/2+(C+D)/2)/2", "(2147483647A+B)/2147483648",
+			"(2147483647A+B)/2147483647", "(1.5*2A+B)/4", "  (A + B) / 2  ", "(A..B)", ".", "(A + .)", "(A- B)/2", "(A*2*B)", "", "((A+B)(C))", "(A+B)C", "1e5", "(A+B)/0*2",
+			"(1000000A+1000000B+1000000C)/3000000", "(1000000007A)/1000000007", "(3*(P1+P2+P3+P4+P5+P9+P11)/7+2*(P6+P7+2Q)/4+2*(T1+T2+T3)/3)/7"};
+
+	private static final String FORMAT_MISMATCH = "mismatch: the parser %s '%s', the validator returns %d%n";
+
+	private static final String FORMAT_RESULT = "%d expressions, %d valid, %d mismatches%n";
+
+	private static final String STRING_ACCEPTS = "accepts";
+
+	private static final String STRING_REJECTS = "rejects";
+
+	private final Random random;
+
+	private int checked;
+
+	private int valid;
+
+	private int mismatches;
+
+	private ExpressionValidatorCheck (final long seed) {
+		this.random = new Random(seed);
+	}
+
+	public static void main (final String[] args) {
+		final int expressions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EXPRESSIONS;
+		final long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+
+		final ExpressionValidatorCheck check = new ExpressionValidatorCheck(seed);
+		for (final String expression : FIXED)
+			check.check(expression);
+		for (int i = 0; i < expressions; i++)
+			check.check(i % 2 == 0 ? check.randomString() : check.randomExpression());
+
+		System.out.printf(FORMAT_RESULT, check.checked, check.valid, check.mismatches);
+		if (check.mismatches != 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Validates and parses the expression, and counts a mismatch when only one of them accepts it
+	 *
+	 * @param expression The expression to check
+	 */
+	private void check (final String expression) {
+		boolean parsed;
+		try {
+			new ExpressionCalculator(expression);
+			parsed = true;
+		} catch (final SyntaxException e) {
+			parsed = false;
+		}
+		final int result = ExpressionCalculator.validate(expression);
+
+		checked++;
+		if (parsed)
+			valid++;
+		if (parsed != (result == ExpressionCalculator.VALID) && mismatches++ < MAX_SHOWN)
+			System.out.printf(FORMAT_MISMATCH, parsed ? STRING_ACCEPTS : STRING_REJECTS, expression, result);
+	}
+
+	/**
+	 * Creates a string of random characters of the grammar
+	 */
+	private String randomString () {
+		final int length = 1 + random.nextInt(MAX_LENGTH);
+		final StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++)
+			builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		return builder.toString();
+	}
+
+	/**
+	 * Creates a random expression of the grammar, where half of them has one character changed
+	 */
+	private String randomExpression () {
+		final StringBuilder builder = new StringBuilder();
+		appendSum(builder, 0);
+		if (random.nextBoolean()) {
+			final int index = random.nextInt(builder.length());
+			builder.setCharAt(index, ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Appends a bracket with weighted terms and a divisor, where a term is a grade or another bracket. Most of the time the divisor is the sum of the weightings, so the
+	 * expression is valid
+	 */
+	private void appendSum (final StringBuilder builder, final int depth) {
+		builder.append('(');
+		final int terms = 1 + random.nextInt(3);
+		int total = 0;
+		for (int i = 0; i < terms; i++) {
+			if (i != 0)
+				builder.append('+');
+			final int weighting = random.nextInt(WEIGHTINGS.length);
+			builder.append(WEIGHTINGS[weighting]);
+			total += weighting < WHOLE_WEIGHTINGS.length ? WHOLE_WEIGHTINGS[weighting] : 0;
+			if (depth < MAX_DEPTH && random.nextInt(4) == 0) {
+				appendSum(builder, depth + 1);
+			} else {
+				builder.append(NAMES[random.nextInt(NAMES.length)]);
+			}
+		}
+		builder.append(')');
+		if (random.nextInt(4) != 0) {
+			builder.append('/').append(total);
+		} else {
+			builder.append(DIVISORS[random.nextInt(DIVISORS.length)]);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Wesley "EngineerCoding" Ameling
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.grademanager.parser.grade;
+
+/**
+ * A check of the {@link Formula#getCanonical() canonical form} of {@link com.grademanager.parser.grade.Formula}, which runs as a plain program since this project has no
+ * test suite. For every expression the canonical form is created in a separate thread, which has to finish within {@link #TIMEOUT} milliseconds. The expression of the
+ * canonical form has to parse back to an equivalent formula, which is its own canonical form.<br/>
+ * Run it with {@code java com.grademanager.parser.grade.FormulaCanonicalCheck}, it exits with status 1 when a check fails.
+ *
+ * @author Wesley A
+ */
+public final class FormulaCanonicalCheck {
+
+	// Constants which are used within this class only
+	private static final long TIMEOUT = 5000L;
+
+	private static final String[] EXPRESSIONS = {"(SE1+SE2)/2", "(SE2+SE1)/2", "(2SE1+2SE2)/4", "(3P+2W+2T)/7", "(A+A+B)/3", "((A+B)/2+(C+D)/2)/2", "A",
+			"(-1A+2B)/1", "(2A+-1B)/1", "(-2A+4B)/2", "(3A+-2B+C)/2", "(2A+-1A)/1", "(A+-1A+B)/1", "(2A+B+-2A+C)/2", "(A+-1A+2B+-2B+C)/1"};
+
+	private static final String FORMAT_TIMEOUT = "'%s': no canonical form within %d ms%n";
+
+	private static final String FORMAT_FAILED = "'%s': %s%n";
+
+	private static final String FORMAT_CANONICAL = "'%s' -> '%s'%n";
+
+	private static final String FORMAT_NOT_EQUIVALENT = "the canonical form '%s' is not equivalent";
+
+	private static final String FORMAT_NOT_CANONICAL = "the canonical form '%s' is not canonical itself";
+
+	private static final String FORMAT_RESULT = "%d expressions, %d failed%n";
+
+	private FormulaCanonicalCheck () {}
+
+	public static void main (final String[] args) throws InterruptedException {
+		int failed = 0;
+		for (final String expression : EXPRESSIONS)
+			if (!check(expression))
+				failed++;
+
+		System.out.printf(FORMAT_RESULT, EXPRESSIONS.length, failed);
+		if (failed != 0)
+			System.exit(1);
+	}
+
+	/**
+	 * Creates the canonical form of the expression in a daemon thread, so a check which never ends does not stop the others
+	 *
+	 * @param expression The expression
+	 * @return Whether the check passed
+	 */
+	private static boolean check (final String expression) throws InterruptedException {
+		final String[] result = new String[2];
+		final Thread thread = new Thread() {
+			@Override
+			public void run () {
+				try {
+					final Formula formula = Formula.parse(expression);
+					final Formula canonical = formula.getCanonical();
+					final Formula parsed = Formula.parse(canonical.expression);
+					result[0] = canonical.expression;
+					if (!parsed.isEquivalent(formula))
+						result[1] = String.format(FORMAT_NOT_EQUIVALENT, canonical.expression);
+					else if (parsed.getCanonical().getFingerprint() != formula.getFingerprint() || !parsed.getCanonical().expression.equals(canonical.expression))
+						result[1] = String.format(FORMAT_NOT_CANONICAL, canonical.expression);
+				} catch (final RuntimeException e) {
+					result[1] = String.valueOf(e);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		thread.join(TIMEOUT);
+
+		if (thread.isAlive()) {
+			System.out.printf(FORMAT_TIMEOUT, expression, TIMEOUT);
+			return false;
+		}
+		if (result[1] != null) {
+			System.out.printf(FORMAT_FAILED, expression, result[1]);
+			return false;
+		}
+		System.out.printf(FORMAT_CANONICAL, expression, result[0]);
+		return true;
+	}
+}